@@ -0,0 +1,175 @@
+package com.readyop.cordova.plugins.barcode.scanner;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.readyop.cordova.plugins.barcode.scanner.utils.FormatStats;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Narrows the detector to the formats a workflow reads most often, and widens
+ * it back when they stop showing up.
+ *
+ * <p>
+ * The narrowed set comes from the workflow's {@link FormatStats}: the formats
+ * that make up most of its reads, once there are enough of them. Frames go to
+ * the narrowed detector, except that every {@link #PROBE_INTERVAL}th frame
+ * probes with the full set, and after {@link #WIDEN_AFTER_EMPTY_FRAMES}
+ * narrowed frames in a row without a read, all frames go to the full set until
+ * something is read again. Every read updates the statistics, and a format
+ * found outside the narrowed set joins it. The detector times of both sets go
+ * to {@link PipelineMetrics} to compare them.
+ *
+ * <p>
+ * A new narrowed set is warmed up on the worker pool first, and the current
+ * set stays in use until it is ready, so the analyzer never waits for a model
+ * to load. The statistics are saved every {@link #SAVE_INTERVAL} reads, so a
+ * crash or a killed app loses little of them.
+ *
+ * <p>
+ * Only used on the analyzer executor, apart from the warm-up callback.
+ */
+public class AdaptiveFormats {
+  private static final String TAG = "AdaptiveFormats";
+
+  /** Share of the workflow's reads the narrowed set must cover. */
+  private static final double COVERAGE = 0.95;
+  /** Reads needed before narrowing at all. */
+  private static final int MIN_READS = 20;
+  static final int WIDEN_AFTER_EMPTY_FRAMES = 30;
+  static final int PROBE_INTERVAL = 20;
+  static final int SAVE_INTERVAL = 50;
+
+  private final ScannerResources resources;
+  private final FormatStats stats;
+  private final int fullFormats;
+  private final boolean shard;
+  private final List<BarcodeScanner> fullScanners;
+
+  private int narrowedFormats;
+  @Nullable
+  private List<BarcodeScanner> narrowedScanners;
+  // Set being warmed up, and the last set whose warm-up finished.
+  private int pendingFormats;
+  private volatile int readyFormats;
+  private int readsSinceSave;
+  private int emptyFrames;
+  private int framesSinceProbe;
+  private boolean widened;
+
+  /**
+   * @param fullFormats format mask the scan was started with, as resolved by
+   *                    {@link ScannerResources#resolveFormats(int)}
+   * @param shard       whether detectors are sharded by format family
+   */
+  public AdaptiveFormats(ScannerResources resources, FormatStats stats, int fullFormats, boolean shard) {
+    this.resources = resources;
+    this.stats = stats;
+    this.fullFormats = fullFormats;
+    this.shard = shard;
+    this.fullScanners = getScanners(fullFormats);
+    narrow(stats.getTopFormats(fullFormats, COVERAGE, MIN_READS));
+  }
+
+  /** Picks the detector for the next frame: true for the narrowed one, false for the full one. */
+  public boolean selectNarrowed(@Nullable PipelineMetrics metrics) {
+    if (pendingFormats != 0 && readyFormats == pendingFormats) {
+      apply(pendingFormats);
+      pendingFormats = 0;
+    }
+    if (narrowedScanners == null || widened) {
+      return false;
+    }
+    if (++framesSinceProbe >= PROBE_INTERVAL) {
+      framesSinceProbe = 0;
+      if (metrics != null) {
+        metrics.formatProbe();
+      }
+      return false;
+    }
+    return true;
+  }
+
+  public List<BarcodeScanner> getScanners(boolean narrowed) {
+    return narrowed && narrowedScanners != null ? narrowedScanners : fullScanners;
+  }
+
+  /** Learns from the barcodes found in a frame by the narrowed or the full detector. */
+  public void onDetected(boolean narrowed, @NonNull List<Barcode> barcodes, long latencyNanos,
+      @Nullable PipelineMetrics metrics) {
+    if (metrics != null) {
+      metrics.recordFormatDetector(narrowed, latencyNanos);
+    }
+
+    if (barcodes.isEmpty()) {
+      if (narrowed && ++emptyFrames >= WIDEN_AFTER_EMPTY_FRAMES) {
+        widened = true;
+        emptyFrames = 0;
+        if (metrics != null) {
+          metrics.formatsWidened();
+        }
+      }
+      return;
+    }
+
+    emptyFrames = 0;
+    widened = false;
+    int seen = 0;
+    for (Barcode barcode : barcodes) {
+      stats.record(barcode.getFormat());
+      seen |= barcode.getFormat();
+    }
+    readsSinceSave += barcodes.size();
+    if (readsSinceSave >= SAVE_INTERVAL) {
+      readsSinceSave = 0;
+      stats.save();
+    }
+    seen &= fullFormats;
+    if (narrowedScanners == null || (seen & ~narrowedFormats) != 0) {
+      narrow(stats.getTopFormats(fullFormats, COVERAGE, MIN_READS) | (narrowedScanners != null ? seen : 0));
+    }
+  }
+
+  /** The formats of the narrowed detector, or 0 when the full set is used. */
+  public int getNarrowedFormats() {
+    return narrowedScanners != null ? narrowedFormats : 0;
+  }
+
+  /** Persists the statistics of the workflow. */
+  public void save() {
+    readsSinceSave = 0;
+    stats.save();
+  }
+
+  /** Switches to {@code formats} once its clients are warm, warming them up on the worker pool if needed. */
+  private void narrow(int formats) {
+    if (formats == 0 || formats == fullFormats) {
+      narrowedScanners = null;
+      narrowedFormats = 0;
+      pendingFormats = 0;
+      return;
+    }
+    if ((narrowedScanners != null && formats == narrowedFormats) || formats == pendingFormats) {
+      return;
+    }
+    pendingFormats = formats;
+    // Creating the clients and loading their models happens off the analyzer thread.
+    resources.getExecutor().execute(() -> resources.prepare(formats, shard, () -> readyFormats = formats));
+  }
+
+  private void apply(int formats) {
+    Log.d(TAG, "Workflow " + stats.getWorkflow() + " narrowed to formats " + formats + " of " + fullFormats);
+    narrowedFormats = formats;
+    narrowedScanners = getScanners(formats);
+  }
+
+  private List<BarcodeScanner> getScanners(int formats) {
+    return shard ? resources.getShards(formats) : Collections.singletonList(resources.getScanner(formats));
+  }
+}
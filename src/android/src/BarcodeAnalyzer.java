@@ -0,0 +1,438 @@
+package com.readyop.cordova.plugins.barcode.scanner;
+
+import android.annotation.SuppressLint;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.media.Image;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.mlkit.vision.common.InputImage;
+import com.readyop.cordova.plugins.barcode.scanner.utils.BitmapUtils;
+import com.readyop.cordova.plugins.barcode.scanner.utils.FrameMetadata;
+import com.readyop.cordova.plugins.barcode.scanner.utils.FrameThrottle;
+import com.readyop.cordova.plugins.barcode.scanner.utils.LumaPrefilter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the barcode detector on CameraX analysis frames.
+ *
+ * <p>
+ * Detection happens either on the whole frame or on a region of interest given
+ * in view coordinates, usually the reticle. For a region of interest, only the
+ * matching crop of the frame is converted to NV21 and handed to ML Kit, so the
+ * detector does less work and cannot report codes outside the region.
+ *
+ * <p>
+ * An optional {@link LumaPrefilter} pre-pass on the luma plane lets frames
+ * without barcode-like detail skip the detector altogether, and an optional
+ * {@link FrameThrottle} limits how often the detector runs.
+ *
+ * <p>
+ * The detector can be sharded into several scanner clients, one per format
+ * family (see {@link ScannerResources#getShards(int)}). Every shard then
+ * searches the same frame at once and their results are merged. With
+ * {@link AdaptiveFormats}, the detector is picked per frame instead.
+ *
+ * <p>
+ * Results are reported together with a matrix that maps the barcode
+ * coordinates to the overlay view, taking the frame rotation and a mirrored
+ * preview into account.
+ */
+public class BarcodeAnalyzer implements ImageAnalysis.Analyzer {
+  private static final String TAG = "BarcodeAnalyzer";
+
+  /** Receives the detector output for every analyzed frame. */
+  public interface Listener {
+    /**
+     * Called on the analyzer executor with the barcodes found in a frame, which
+     * may be none. {@code toView} is only valid for the duration of the call.
+     */
+    void onBarcodes(@NonNull List<Barcode> barcodes, @NonNull Matrix toView);
+  }
+
+  /** View size, mirroring and region of interest, replaced as a whole from the main thread. */
+  private static final class Viewport {
+    final int width;
+    final int height;
+    final boolean mirrored;
+    @Nullable
+    final RectF regionOfInterest;
+
+    Viewport(int width, int height, boolean mirrored, @Nullable RectF regionOfInterest) {
+      this.width = width;
+      this.height = height;
+      this.mirrored = mirrored;
+      this.regionOfInterest = regionOfInterest;
+    }
+  }
+
+  private final List<BarcodeScanner> scanners;
+  private final Executor executor;
+  private final Listener listener;
+
+  @Nullable
+  private volatile LumaPrefilter prefilter;
+  @Nullable
+  private volatile FrameThrottle throttle;
+  @Nullable
+  private volatile ScanTimeline timeline;
+  @Nullable
+  private volatile PipelineMetrics metrics;
+  @Nullable
+  private volatile AdaptiveFormats adaptiveFormats;
+  @Nullable
+  private volatile FrameRecorder recorder;
+  private volatile Matrix sensorToView;
+  private volatile Viewport viewport = new Viewport(0, 0, false, null);
+
+  // Only touched on the analyzer executor. A new frame is not delivered before
+  // the previous one is closed, so these can be reused from frame to frame.
+  private final Matrix bufferToUpright = new Matrix();
+  private final Matrix sensorToUpright = new Matrix();
+  private final Matrix uprightToView = new Matrix();
+  private final Matrix bufferToView = new Matrix();
+  private final Matrix viewToBuffer = new Matrix();
+  private final Matrix inputToView = new Matrix();
+  private final RectF mappedRect = new RectF();
+  private final Rect cropRect = new Rect();
+
+  public BarcodeAnalyzer(BarcodeScanner scanner, Executor executor, Listener listener) {
+    this(Collections.singletonList(scanner), executor, listener);
+  }
+
+  /** Runs every scanner of {@code scanners} on each frame, concurrently, and merges what they find. */
+  public BarcodeAnalyzer(List<BarcodeScanner> scanners, Executor executor, Listener listener) {
+    this.scanners = scanners;
+    this.executor = executor;
+    this.listener = listener;
+  }
+
+  /**
+   * Sets the overlay geometry. {@code regionOfInterest} is in view coordinates;
+   * pass null to analyze the full frame. {@code mirrored} must match a preview
+   * flipped with a scale of -1 on both axes.
+   */
+  public void setViewport(int width, int height, boolean mirrored, @Nullable RectF regionOfInterest) {
+    viewport = new Viewport(width, height, mirrored, regionOfInterest == null ? null : new RectF(regionOfInterest));
+  }
+
+  /**
+   * Runs {@code prefilter} on the luma plane of every frame, or of its region of
+   * interest, and skips the detector when it finds no candidates. Pass null to
+   * send every frame to the detector.
+   */
+  public void setPrefilter(@Nullable LumaPrefilter prefilter) {
+    this.prefilter = prefilter;
+  }
+
+  @Nullable
+  public LumaPrefilter getPrefilter() {
+    return prefilter;
+  }
+
+  /**
+   * Drops frames the throttle rejects before any work is done on them, and
+   * feeds it the detector latency. Pass null to analyze every frame.
+   */
+  public void setThrottle(@Nullable FrameThrottle throttle) {
+    this.throttle = throttle;
+  }
+
+  @Nullable
+  public FrameThrottle getThrottle() {
+    return throttle;
+  }
+
+  /** Marks the first frame and the first detected barcode on the timeline. */
+  public void setTimeline(@Nullable ScanTimeline timeline) {
+    this.timeline = timeline;
+  }
+
+  /** Records conversion, detector and frame timings and frame counts. */
+  public void setMetrics(@Nullable PipelineMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Lets {@code adaptiveFormats} choose between a narrowed and the full
+   * detector for every frame, in place of the scanners the analyzer was
+   * created with. Pass null to go back to those.
+   */
+  public void setAdaptiveFormats(@Nullable AdaptiveFormats adaptiveFormats) {
+    this.adaptiveFormats = adaptiveFormats;
+  }
+
+  @Nullable
+  public AdaptiveFormats getAdaptiveFormats() {
+    return adaptiveFormats;
+  }
+
+  /** Records every frame that is analyzed, before the prefilter. Pass null to stop. */
+  public void setRecorder(@Nullable FrameRecorder recorder) {
+    this.recorder = recorder;
+  }
+
+  @Override
+  public int getTargetCoordinateSystem() {
+    return ImageAnalysis.COORDINATE_SYSTEM_VIEW_REFERENCED;
+  }
+
+  @Override
+  public void updateTransform(@Nullable Matrix matrix) {
+    sensorToView = matrix == null ? null : new Matrix(matrix);
+  }
+
+  @Override
+  @SuppressLint("UnsafeOptInUsageError")
+  public void analyze(@NonNull ImageProxy image) {
+    long frameStart = System.nanoTime();
+    PipelineMetrics metrics = this.metrics;
+
+    ScanTimeline timeline = this.timeline;
+    if (timeline != null) {
+      timeline.mark(ScanTimeline.Stage.FIRST_FRAME);
+    }
+
+    Matrix sensorToView = this.sensorToView;
+    Viewport viewport = this.viewport;
+
+    // Without the transform, results can neither be drawn nor checked against
+    // the region of interest.
+    FrameThrottle throttle = this.throttle;
+    if (sensorToView == null || image.getImage() == null
+        || (throttle != null && !throttle.shouldAnalyze(frameStart))) {
+      if (metrics != null) {
+        metrics.frameDropped();
+      }
+      image.close();
+      return;
+    }
+
+    FrameRecorder recorder = this.recorder;
+    if (recorder != null) {
+      recorder.record(image);
+    }
+
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int rotation = image.getImageInfo().getRotationDegrees();
+
+    setBufferToUpright(bufferToUpright, rotation, width, height);
+
+    // upright -> sensor -> view, then the mirroring applied to the preview view.
+    sensorToUpright.set(image.getImageInfo().getSensorToBufferTransformMatrix());
+    sensorToUpright.postConcat(bufferToUpright);
+    sensorToUpright.invert(uprightToView);
+    uprightToView.postConcat(sensorToView);
+    if (viewport.mirrored) {
+      uprightToView.postScale(-1f, -1f, viewport.width / 2f, viewport.height / 2f);
+    }
+
+    if (viewport.regionOfInterest == null) {
+      if (!hasCandidates(image, 0, 0, width, height, rotation)) {
+        skip(image);
+        return;
+      }
+
+      inputToView.set(uprightToView);
+      // The camera image goes to the detector as is; there is no conversion to time.
+      InputImage input = InputImage.fromMediaImage(image.getImage(), rotation);
+      detect(image, input, null, frameStart);
+      return;
+    }
+
+    if (!getCropRect(viewport.regionOfInterest, width, height, cropRect)) {
+      skip(image);
+      return;
+    }
+
+    if (!hasCandidates(image, cropRect.left, cropRect.top, cropRect.width(), cropRect.height(), rotation)) {
+      skip(image);
+      return;
+    }
+
+    // The detector reports coordinates in the upright crop; move them to the
+    // upright frame before going to the view.
+    mappedRect.set(cropRect);
+    bufferToUpright.mapRect(mappedRect);
+    inputToView.set(uprightToView);
+    inputToView.preTranslate(mappedRect.left, mappedRect.top);
+
+    long conversionStart = System.nanoTime();
+    byte[] nv21 = BitmapUtils.getNv21(image, cropRect);
+    InputImage input = InputImage.fromByteArray(nv21, cropRect.width(), cropRect.height(), rotation,
+        InputImage.IMAGE_FORMAT_NV21);
+    if (metrics != null) {
+      metrics.recordConversion(System.nanoTime() - conversionStart);
+    }
+    detect(image, input, nv21, frameStart);
+  }
+
+  @SuppressLint("UnsafeOptInUsageError")
+  private boolean hasCandidates(ImageProxy image, int left, int top, int width, int height, int rotation) {
+    LumaPrefilter prefilter = this.prefilter;
+    if (prefilter == null) {
+      return true;
+    }
+
+    // Only built when there is a prefilter to pass it to.
+    FrameMetadata region = new FrameMetadata.Builder().setWidth(width).setHeight(height).setRotation(rotation)
+        .build();
+    Image.Plane luma = image.getImage().getPlanes()[0];
+    return prefilter.hasCandidates(luma.getBuffer(), luma.getRowStride(), left, top, region);
+  }
+
+  /** Reports an empty frame without running the detector. */
+  private void skip(ImageProxy image) {
+    PipelineMetrics metrics = this.metrics;
+    if (metrics != null) {
+      metrics.frameSkipped();
+    }
+
+    try {
+      listener.onBarcodes(Collections.emptyList(), uprightToView);
+    } finally {
+      image.close();
+    }
+  }
+
+  private void detect(ImageProxy image, InputImage input, @Nullable byte[] nv21, long frameStart) {
+    AdaptiveFormats adaptive = this.adaptiveFormats;
+    boolean narrowed = adaptive != null && adaptive.selectNarrowed(this.metrics);
+    List<BarcodeScanner> scanners = adaptive != null ? adaptive.getScanners(narrowed) : this.scanners;
+
+    long start = System.nanoTime();
+    if (scanners.size() == 1) {
+      scanners.get(0).process(input).addOnCompleteListener(executor, task -> onDetected(image, nv21, frameStart,
+          start, task.isSuccessful() ? task.getResult() : null, task.getException(), adaptive, narrowed));
+      return;
+    }
+
+    List<Task<List<Barcode>>> tasks = new ArrayList<>(scanners.size());
+    for (BarcodeScanner scanner : scanners) {
+      tasks.add(scanner.process(input));
+    }
+    Tasks.whenAllComplete(tasks).addOnCompleteListener(executor, done -> {
+      // The shards search disjoint format families, so nothing is found twice.
+      List<Barcode> merged = new ArrayList<>();
+      Exception error = null;
+      boolean succeeded = false;
+      for (Task<List<Barcode>> task : tasks) {
+        if (task.isSuccessful()) {
+          succeeded = true;
+          if (task.getResult() != null) {
+            merged.addAll(task.getResult());
+          }
+        } else if (error == null) {
+          error = task.getException();
+        }
+      }
+      onDetected(image, nv21, frameStart, start, succeeded ? merged : null, error, adaptive, narrowed);
+    });
+  }
+
+  /** Handles the detector output of a frame, then releases the frame. */
+  private void onDetected(ImageProxy image, @Nullable byte[] nv21, long frameStart, long start,
+      @Nullable List<Barcode> barcodes, @Nullable Exception error, @Nullable AdaptiveFormats adaptive,
+      boolean narrowed) {
+    long latency = System.nanoTime() - start;
+    FrameThrottle throttle = this.throttle;
+    if (throttle != null) {
+      throttle.recordLatency(latency);
+    }
+
+    if (error != null) {
+      Log.e(TAG, "Barcode detection failed", error);
+    }
+    ScanTimeline timeline = this.timeline;
+    if (timeline != null && barcodes != null && !barcodes.isEmpty()) {
+      timeline.mark(ScanTimeline.Stage.FIRST_DETECTION);
+    }
+
+    if (barcodes == null) {
+      barcodes = Collections.emptyList();
+    }
+    if (adaptive != null) {
+      adaptive.onDetected(narrowed, barcodes, latency, this.metrics);
+    }
+
+    try {
+      listener.onBarcodes(barcodes, inputToView);
+    } finally {
+      if (nv21 != null) {
+        BitmapUtils.releaseNv21(nv21);
+      }
+      image.close();
+
+      PipelineMetrics metrics = this.metrics;
+      if (metrics != null) {
+        metrics.recordDetector(latency);
+        metrics.frameDetected(barcodes.size());
+        metrics.recordFrameLatency(System.nanoTime() - frameStart);
+      }
+    }
+  }
+
+  /**
+   * Maps the region of interest from view to buffer coordinates and clips it to
+   * the frame, with even edges so the chroma planes line up. Returns false when
+   * nothing of the region is left.
+   */
+  private boolean getCropRect(RectF regionOfInterest, int width, int height, Rect out) {
+    bufferToView.set(bufferToUpright);
+    bufferToView.postConcat(uprightToView);
+    if (!bufferToView.invert(viewToBuffer)) {
+      return false;
+    }
+
+    mappedRect.set(regionOfInterest);
+    viewToBuffer.mapRect(mappedRect);
+
+    int left = Math.max(0, (int) Math.floor(mappedRect.left)) & ~1;
+    int top = Math.max(0, (int) Math.floor(mappedRect.top)) & ~1;
+    int right = Math.min(width, (int) Math.ceil(mappedRect.right)) & ~1;
+    int bottom = Math.min(height, (int) Math.ceil(mappedRect.bottom)) & ~1;
+
+    if (right - left < 2 || bottom - top < 2) {
+      return false;
+    }
+    out.set(left, top, right, bottom);
+    return true;
+  }
+
+  /**
+   * Sets {@code matrix} to rotate buffer coordinates clockwise by
+   * {@code rotation} degrees, into the upright image ML Kit reports results in.
+   */
+  private static void setBufferToUpright(Matrix matrix, int rotation, int width, int height) {
+    matrix.reset();
+    matrix.postRotate(rotation);
+    switch (rotation) {
+      case 90:
+        matrix.postTranslate(height, 0);
+        break;
+      case 180:
+        matrix.postTranslate(width, height);
+        break;
+      case 270:
+        matrix.postTranslate(0, width);
+        break;
+      default:
+        break;
+    }
+  }
+}
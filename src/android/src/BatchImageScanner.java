@@ -0,0 +1,130 @@
+package com.readyop.cordova.plugins.barcode.scanner;
+
+import android.graphics.BitmapFactory;
+
+import androidx.annotation.Nullable;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.readyop.cordova.plugins.barcode.scanner.utils.BitmapUtils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scans a list of still images in parallel and reports each one as it
+ * finishes.
+ *
+ * <p>
+ * A fixed number of workers take images from the list in order. Before
+ * decoding, each worker reserves the peak bitmap memory its image needs from a
+ * budget shared by the batch, and waits while the budget is used up, so large
+ * photos scan fewer at a time than small ones. A cancelled batch starts no new
+ * images; the ones in flight still finish and are reported.
+ */
+public class BatchImageScanner {
+
+  /** Receives results on the worker threads. */
+  public interface Listener {
+    /** One image is done, with its barcodes or an error message. */
+    void onImage(int index, @Nullable List<Barcode> barcodes, @Nullable String error, int completed, int total);
+
+    /** Every worker has stopped; called once. */
+    void onDone(int completed, int total, boolean cancelled);
+  }
+
+  private final StillImageScanner scanner;
+  private final List<BitmapUtils.ImageSource> sources;
+  private final Listener listener;
+  private final int parallelism;
+  private final int budgetKb;
+  private final Semaphore memory;
+
+  private final AtomicInteger next = new AtomicInteger();
+  private final AtomicInteger completed = new AtomicInteger();
+  private final AtomicInteger running = new AtomicInteger();
+  private volatile boolean cancelled;
+
+  /**
+   * @param parallelism  number of images scanned at the same time
+   * @param budgetBytes  bitmap memory the images in flight may use together
+   */
+  public BatchImageScanner(StillImageScanner scanner, List<BitmapUtils.ImageSource> sources, int parallelism,
+      long budgetBytes, Listener listener) {
+    this.scanner = scanner;
+    this.sources = sources;
+    this.listener = listener;
+    this.parallelism = Math.max(1, Math.min(parallelism, sources.size()));
+    this.budgetKb = (int) Math.max(1, Math.min(Integer.MAX_VALUE, budgetBytes / 1024));
+    this.memory = new Semaphore(budgetKb, true);
+  }
+
+  /**
+   * Starts the workers on {@code executor}. Workers block while they wait for
+   * memory, so it must not be a pool that live scanning depends on.
+   */
+  public void start(Executor executor) {
+    if (sources.isEmpty()) {
+      listener.onDone(0, 0, false);
+      return;
+    }
+    running.set(parallelism);
+    for (int i = 0; i < parallelism; i++) {
+      executor.execute(this::work);
+    }
+  }
+
+  public void cancel() {
+    cancelled = true;
+  }
+
+  private void work() {
+    int total = sources.size();
+    try {
+      while (!cancelled) {
+        int index = next.getAndIncrement();
+        if (index >= total) {
+          break;
+        }
+        scan(index, total);
+      }
+    } catch (InterruptedException e) {
+      cancelled = true;
+      Thread.currentThread().interrupt();
+    } finally {
+      if (running.decrementAndGet() == 0) {
+        listener.onDone(completed.get(), total, cancelled);
+      }
+    }
+  }
+
+  private void scan(int index, int total) throws InterruptedException {
+    BitmapUtils.ImageSource source = sources.get(index);
+    List<Barcode> barcodes = null;
+    String error = null;
+
+    try {
+      BitmapFactory.Options bounds = BitmapUtils.decodeBounds(source);
+      if (bounds == null) {
+        throw new IOException("Not an image");
+      }
+
+      // An image larger than the whole budget still gets to run, alone.
+      long peakKb = StillImageScanner.estimatePeakBytes(bounds.outWidth, bounds.outHeight) / 1024;
+      int permits = (int) Math.max(1, Math.min(budgetKb, peakKb));
+      memory.acquire(permits);
+      try {
+        barcodes = scanner.scan(source);
+      } finally {
+        memory.release(permits);
+      }
+    } catch (IOException | ExecutionException | RuntimeException e) {
+      error = e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+
+    listener.onImage(index, barcodes, error, completed.incrementAndGet(), total);
+  }
+}
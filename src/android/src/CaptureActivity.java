@@ -5,16 +5,17 @@ import android.annotation.SuppressLint;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
+import android.content.res.Configuration;
+import android.graphics.Matrix;
 import android.graphics.PixelFormat;
-import android.graphics.PorterDuff;
+import android.graphics.Point;
 import android.graphics.RectF;
 import android.os.Bundle;
+import android.os.SystemClock;
 
+import android.util.Base64;
 import android.util.Log;
+import android.util.Size;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
@@ -27,10 +28,11 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.FocusMeteringAction;
+import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.MeteringPoint;
 import androidx.camera.core.SurfaceOrientedMeteringPointFactory;
 import androidx.camera.lifecycle.ProcessCameraProvider;
-import androidx.camera.mlkit.vision.MlKitAnalyzer;
+import androidx.camera.view.CameraController;
 import androidx.camera.view.LifecycleCameraController;
 import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
@@ -42,34 +44,67 @@ import com.google.android.gms.common.api.CommonStatusCodes;
 import com.google.android.material.snackbar.Snackbar;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.mlkit.vision.barcode.BarcodeScanner;
-import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
-import com.google.mlkit.vision.barcode.BarcodeScanning;
 import com.google.mlkit.vision.barcode.common.Barcode;
-
+import com.readyop.cordova.plugins.barcode.scanner.utils.DuplicateFilter;
+import com.readyop.cordova.plugins.barcode.scanner.utils.FormatStats;
+import com.readyop.cordova.plugins.barcode.scanner.utils.FrameThrottle;
+import com.readyop.cordova.plugins.barcode.scanner.utils.LookupIndex;
+import com.readyop.cordova.plugins.barcode.scanner.utils.LumaPrefilter;
+import com.readyop.cordova.plugins.barcode.scanner.utils.ResultChecks;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 public class CaptureActivity extends AppCompatActivity implements SurfaceHolder.Callback {
 
   public Integer BarcodeFormats;
   public String detectorType = "";
+  public String roiMode = "full";
+  public boolean continuous = false;
+  public boolean multiCode = false;
+  public boolean sortByDistance = false;
+  public boolean returnRawBytes = false;
 
   public static final String BarcodeFormat = "MLKitBarcodeFormat";
   public static final String BarcodeType = "MLKitBarcodeType";
   public static final String BarcodeValue = "MLKitBarcodeValue";
+  public static final String BarcodeList = "MLKitBarcodeList";
+  public static final String BarcodeRawBytes = "MLKitBarcodeRawBytes";
 
   private ListenableFuture<ProcessCameraProvider> cameraProviderFuture;
-  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private Executor executor;
   private PreviewView mCameraView;
   private SurfaceHolder holder;
   private SurfaceView surfaceView;
-  private RectF reticleRect;
+  private volatile RectF reticleRect;
+  private BarcodeAnalyzer analyzer;
+  private ScanSession session;
+  private DuplicateFilter duplicateFilter;
+  private LookupIndex lookupIndex;
+  private ResultValidator validator;
+  private FrameRecorder recorder;
+  private FeedbackEngine feedback;
+  private boolean beepOnSuccess;
+  private boolean vibrateOnSuccess;
+  private boolean rotateCamera;
+  private long scanStartedAt;
+  private OverlayRenderer overlay;
+  // Only used on the analyzer executor.
+  private final RectF boxRect = new RectF();
+  // Box coordinates of the latest frame, grown to the largest frame seen.
+  private float[] boxes = new float[16];
+  private boolean firstDecodeLogged;
 
   private static final int RC_HANDLE_CAMERA_PERM = 2;
   private ImageButton _TorchButton;
@@ -91,6 +126,7 @@ public class CaptureActivity extends AppCompatActivity implements SurfaceHolder.
     holder = surfaceView.getHolder();
     holder.setFormat(PixelFormat.TRANSPARENT);
     holder.addCallback(this);
+    overlay = new OverlayRenderer(holder);
 
     // read parameters from the intent used to launch the activity.
     BarcodeFormats = getIntent().getIntExtra("formats", 1234);
@@ -100,9 +136,37 @@ public class CaptureActivity extends AppCompatActivity implements SurfaceHolder.
       detectorType = "";
     }
 
+    scanStartedAt = getIntent().getLongExtra("scanStartedAt", SystemClock.elapsedRealtime());
+    executor = ScannerResources.get(this).newSerialExecutor();
+
+    continuous = getIntent().getBooleanExtra("continuous", false);
+    multiCode = getIntent().getBooleanExtra("multiCode", false);
+    sortByDistance = getIntent().getBooleanExtra("sortByDistance", false);
+    returnRawBytes = getIntent().getBooleanExtra("rawBytes", false);
+    beepOnSuccess = getIntent().getBooleanExtra("beepOnSuccess", false);
+    vibrateOnSuccess = getIntent().getBooleanExtra("vibrateOnSuccess", false);
+    feedback = ScannerResources.get(this).getFeedback();
+    if (beepOnSuccess) {
+      // Usually loaded already, as the plugin starts this before opening the activity.
+      feedback.prepare();
+    }
+    duplicateFilter = new DuplicateFilter(getIntent().getIntExtra("duplicateWindow", 2000),
+      Math.max(1, getIntent().getIntExtra("duplicateCacheSize", 256)));
+    session = ScanSession.get(getIntent().getStringExtra("requestId"));
+    if (session != null) {
+      mark(ScanTimeline.Stage.ACTIVITY_CREATED);
+      session.attach(this);
+    }
+
+    roiMode = getIntent().getStringExtra("roi");
+    if (!"reticle".equals(roiMode) && !"custom".equals(roiMode)) {
+      roiMode = "full";
+    }
+
     int rc = ActivityCompat.checkSelfPermission(this, Manifest.permission.CAMERA);
 
     if (rc == PackageManager.PERMISSION_GRANTED) {
+      mark(ScanTimeline.Stage.PERMISSION_GRANTED);
       // Start Camera
       startCamera();
     } else {
@@ -202,8 +266,9 @@ public class CaptureActivity extends AppCompatActivity implements SurfaceHolder.
     }
 
     if (grantResults.length != 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+      mark(ScanTimeline.Stage.PERMISSION_GRANTED);
       startCamera();
-      DrawFocusRect(Color.parseColor("#FFFFFF"), null, null);
+      overlay.invalidate();
       return;
     }
 
@@ -217,17 +282,17 @@ public class CaptureActivity extends AppCompatActivity implements SurfaceHolder.
 
   @Override
   public void surfaceCreated(SurfaceHolder surfaceHolder) {
-
+    overlay.attachSurface();
   }
 
   @Override
   public void surfaceChanged(SurfaceHolder surfaceHolder, int i, int i1, int i2) {
-    DrawFocusRect(Color.parseColor("#FFFFFF"), null, null);
+    overlay.invalidate();
   }
 
   @Override
   public void surfaceDestroyed(SurfaceHolder surfaceHolder) {
-
+    overlay.detachSurface();
   }
 
   @Override
@@ -258,12 +323,59 @@ public class CaptureActivity extends AppCompatActivity implements SurfaceHolder.
     }
   }
 
+  @Override
+  protected void onDestroy() {
+    super.onDestroy();
+
+    if (session != null && isFinishing()) {
+      // The plugin ends the session on the activity result too, but no result
+      // arrives when the activity is torn down otherwise; the next scan must not
+      // be refused as SCANNER_OPEN.
+      session.end();
+    }
+
+    overlay.release();
+    Log.d("ReadyOpScanner", "Overlay redrew " + overlay.getRedraws() + " times, skipped "
+      + overlay.getSkippedRedraws() + " unchanged frames");
+
+    LumaPrefilter prefilter = analyzer != null ? analyzer.getPrefilter() : null;
+    if (prefilter != null) {
+      Log.d("ReadyOpScanner", "Prefilter skipped " + prefilter.getFramesSkipped() + " of "
+        + prefilter.getFramesChecked() + " frames");
+    }
+
+    FrameThrottle throttle = analyzer != null ? analyzer.getThrottle() : null;
+    if (throttle != null) {
+      Log.d("ReadyOpScanner", "Throttle dropped " + throttle.getFramesDropped() + " frames, analyzed "
+        + throttle.getFramesAccepted() + ", average detector latency " + throttle.getAverageLatencyMs() + " ms");
+    }
+
+    if (recorder != null) {
+      recorder.close();
+    }
+
+    if (lookupIndex != null) {
+      Log.d("ReadyOpScanner", "Lookup set accepted " + lookupIndex.getHits() + " reads and ignored "
+        + lookupIndex.getMisses() + " since it was loaded");
+    }
+
+    AdaptiveFormats adaptiveFormats = analyzer != null ? analyzer.getAdaptiveFormats() : null;
+    if (adaptiveFormats != null) {
+      adaptiveFormats.save();
+    }
+
+    if (continuous) {
+      Log.d("ReadyOpScanner", "Duplicate filter suppressed " + duplicateFilter.getHits() + " reads, evicted "
+        + duplicateFilter.getEvictions() + " entries");
+    }
+  }
+
   @SuppressLint("ClickableViewAccessibility")
   void startCamera() {
     mCameraView = findViewById(getResources().getIdentifier("previewView", "id", getPackageName()));
     mCameraView.setImplementationMode(PreviewView.ImplementationMode.PERFORMANCE);
 
-    boolean rotateCamera = getIntent().getBooleanExtra("rotateCamera", false);
+    rotateCamera = getIntent().getBooleanExtra("rotateCamera", false);
     if (rotateCamera) {
       mCameraView.setScaleX(-1F);
       mCameraView.setScaleY(-1F);
@@ -273,6 +385,8 @@ public class CaptureActivity extends AppCompatActivity implements SurfaceHolder.
     }
 
     mCameraView.addOnLayoutChangeListener((v, left, top, right, bottom, oldLeft, oldTop, oldRight, oldBottom) -> {
+      updateReticleRect();
+
       // If the camera isn't ready yet (hasn't been bound to the preview view)
       if (this.cameraController == null) {
         return;
@@ -287,7 +401,8 @@ public class CaptureActivity extends AppCompatActivity implements SurfaceHolder.
       cameraController.getCameraControl().startFocusAndMetering(autoFocusAction);
     });
 
-    cameraProviderFuture = ProcessCameraProvider.getInstance(this);
+    // Already started if the plugin was prepared.
+    cameraProviderFuture = ScannerResources.get(this).getCameraProvider();
     cameraProviderFuture.addListener(() -> {
       try {
         ProcessCameraProvider cameraProvider = cameraProviderFuture.get();
@@ -307,121 +422,326 @@ public class CaptureActivity extends AppCompatActivity implements SurfaceHolder.
   private void bindPreview(ProcessCameraProvider cameraProvider) {
     cameraController = new LifecycleCameraController(getBaseContext());
 
-    int barcodeFormat;
-    if (BarcodeFormats == 0 || BarcodeFormats == 1234) {
-      barcodeFormat = (Barcode.FORMAT_CODE_39 | Barcode.FORMAT_DATA_MATRIX);
-    } else {
-      barcodeFormat = BarcodeFormats;
+    int barcodeFormat = ScannerResources.resolveFormats(BarcodeFormats);
+    ScannerResources resources = ScannerResources.get(this);
+    boolean shard = getIntent().getBooleanExtra("shardDetectors", false);
+    boolean warm = resources.isWarm(barcodeFormat, shard);
+    // Sharding searches the format families of a frame on several cores at once.
+    List<BarcodeScanner> scanners = shard
+      ? resources.getShards(barcodeFormat) : Collections.singletonList(resources.getScanner(barcodeFormat));
+
+    if (getIntent().getBooleanExtra("lookupSet", false)) {
+      lookupIndex = resources.getLookupIndex();
+      if (lookupIndex == null) {
+        Log.w("ReadyOpScanner", "lookupSet is set but no lookup set was loaded, accepting every code");
+      }
     }
 
-    BarcodeScanner scanner = BarcodeScanning.getClient(new BarcodeScannerOptions.Builder().setBarcodeFormats(barcodeFormat).build());
+    int consensusVotes = getIntent().getIntExtra("consensusVotes", 1);
+    // Codes outside the lookup set are dropped here, without a round trip to JS.
+    // The duplicate filter only applies to continuous scans, which report a
+    // label once per window however many frames show it.
+    validator = new ResultValidator(new ResultChecks()
+      .setLookupIndex(lookupIndex)
+      .setCheckDigits(getIntent().getBooleanExtra("validateCheckDigits", false))
+      .setConsensus(consensusVotes, getIntent().getIntExtra("consensusFrames", consensusVotes))
+      .setDuplicateFilter(continuous ? duplicateFilter : null), resources.getMetrics());
 
     cameraController.setTapToFocusEnabled(true);
-    cameraController.setImageAnalysisAnalyzer(executor, new MlKitAnalyzer(
-      Arrays.asList(scanner), cameraController.COORDINATE_SYSTEM_VIEW_REFERENCED, executor, result -> {
+    analyzer = new BarcodeAnalyzer(scanners, executor, (results, toView) -> {
+      long detectedAt = System.nanoTime();
+      // Called for empty frames too, which count for the consensus.
+      results = validator.accept(results);
+
+      if ((results.size() == 0) || (results.get(0) == null)) {
+        overlay.clearBoxes();
+        return;
+      }
+
+      if (boxes.length < 4 * results.size()) {
+        boxes = new float[4 * results.size()];
+      }
+      for (int i = 0; i < results.size(); i++) {
+        boxRect.set(results.get(i).getBoundingBox());
+        toView.mapRect(boxRect);
+        boxes[4 * i] = boxRect.left;
+        boxes[4 * i + 1] = boxRect.top;
+        boxes[4 * i + 2] = boxRect.right;
+        boxes[4 * i + 3] = boxRect.bottom;
+      }
+      overlay.setBoxes(boxes, 4 * results.size());
 
-      List<Barcode> results = result.getValue(scanner);
+      if (!firstDecodeLogged) {
+        firstDecodeLogged = true;
+        Log.d("ReadyOpScanner", "Time to first decode: " + (SystemClock.elapsedRealtime() - scanStartedAt) + " ms"
+          + (warm ? " (prepared)" : " (cold)"));
+      }
 
-      if ((results == null) || (results.size() == 0) || (results.get(0) == null)) {
-        DrawFocusRect(Color.parseColor("#FFFFFF"), null, null);
+      if (multiCode && !continuous) {
+        finishWithBarcodes(results, toView, detectedAt);
         return;
       }
 
       if (results.size() > 0) {
         for (Barcode barcode : results) {
-          DrawFocusRect(Color.parseColor("#FFFFFF"), null, barcode);
+          String value = getBarcodeValue(barcode);
+
+          if (continuous && session != null) {
+            // The camera keeps running, so the same label shows up frame after
+            // frame; report it once per duplicate window.
+            if (validator.isNew(barcode, value)) {
+              playFeedback(detectedAt);
+              session.deliver(barcode);
+            }
+            continue;
+          }
 
-          if (barcode.getFormat() == Barcode.FORMAT_PDF417) {
-            Barcode.DriverLicense dl = barcode.getDriverLicense();
-            String firstName = dl.getFirstName();
-            Log.d("ReadyOpScanner", "First Name: " + firstName);
+          if (session != null) {
+            // Hand the result to the plugin now rather than after the
+            // activity has closed.
+            if (session.deliverResult(barcode)) {
+              playFeedback(detectedAt);
+              setResult(CommonStatusCodes.SUCCESS);
+              finish();
+            }
+            return;
           }
 
           // Toast.makeText(CaptureActivity.this, "FOUND: " + barcode.getDisplayValue(),
           // Toast.LENGTH_SHORT).show();
           Intent data = new Intent();
-          String value = barcode.getRawValue();
-
-          // rawValue returns null if string is not UTF-8 encoded.
-          // If that's the case, we will decode it as ASCII,
-          // because it's the most common encoding for barcodes.
-          // e.g. https://www.barcodefaq.com/1d/code-128/
-          if (barcode.getRawValue() == null) {
-            value = new String(barcode.getRawBytes(), StandardCharsets.US_ASCII);
-          }
 
           data.putExtra(BarcodeFormat, barcode.getFormat());
           data.putExtra(BarcodeType, barcode.getValueType());
           data.putExtra(BarcodeValue, value);
+          if (returnRawBytes && barcode.getRawBytes() != null) {
+            data.putExtra(BarcodeRawBytes, barcode.getRawBytes());
+          }
 
+          playFeedback(detectedAt);
           setResult(CommonStatusCodes.SUCCESS, data);
           finish();
         }
       }
-    }));
+    });
+    if (getIntent().getBooleanExtra("prefilter", false)) {
+      analyzer.setPrefilter(new LumaPrefilter());
+    }
+
+    float analysisFps = getIntent().getFloatExtra("analysisFps", 0);
+    float analysisMaxDuty = getIntent().getFloatExtra("analysisMaxDuty", 1);
+    if (analysisFps > 0 || analysisMaxDuty < 1) {
+      analyzer.setThrottle(new FrameThrottle(analysisFps, Math.max(0.05f, Math.min(1f, analysisMaxDuty))));
+    }
+
+    int analysisWidth = getIntent().getIntExtra("analysisWidth", 0);
+    int analysisHeight = getIntent().getIntExtra("analysisHeight", 0);
+    if (analysisWidth > 0 && analysisHeight > 0) {
+      // The target size is given in display orientation.
+      boolean portrait = getResources().getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT;
+      int longSide = Math.max(analysisWidth, analysisHeight);
+      int shortSide = Math.min(analysisWidth, analysisHeight);
+      cameraController.setImageAnalysisTargetSize(new CameraController.OutputSize(
+        portrait ? new Size(shortSide, longSide) : new Size(longSide, shortSide)));
+    }
+
+    // Never queue frames behind a slow detector, always analyze the newest one.
+    cameraController.setImageAnalysisBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST);
+
+    if (session != null) {
+      analyzer.setTimeline(session.getTimeline());
+    }
+    analyzer.setMetrics(resources.getMetrics());
+
+    String formatWorkflow = getIntent().getStringExtra("adaptiveFormats");
+    if (formatWorkflow != null && !formatWorkflow.isEmpty()) {
+      analyzer.setAdaptiveFormats(new AdaptiveFormats(resources, new FormatStats(this, formatWorkflow), barcodeFormat,
+        shard));
+    }
+
+    int recordFrames = getIntent().getIntExtra("recordFrames", 0);
+    if (recordFrames > 0) {
+      try {
+        recorder = FrameRecorder.create(this, recordFrames);
+        analyzer.setRecorder(recorder);
+      } catch (IOException e) {
+        Log.w("ReadyOpScanner", "Could not start recording frames", e);
+      }
+    }
+
+    updateReticleRect();
+    cameraController.setImageAnalysisAnalyzer(executor, analyzer);
 
     cameraController.bindToLifecycle((LifecycleOwner) this);
     mCameraView.setController(cameraController);
+    mark(ScanTimeline.Stage.PREVIEW_BOUND);
   }
 
   /**
-   * For drawing the rectangular box
+   * Beeps and vibrates for a barcode accepted from a frame whose results
+   * arrived at {@code detectedAt}, before the result is handed over.
    */
-  private void DrawFocusRect(int color, Bitmap preview, Barcode barcode) {
-    if (mCameraView == null) {
-      return;
+  private void playFeedback(long detectedAt) {
+    feedback.play(beepOnSuccess, vibrateOnSuccess, detectedAt);
+  }
+
+  private void mark(ScanTimeline.Stage stage) {
+    if (session != null) {
+      session.getTimeline().mark(stage);
     }
+  }
 
-    boolean isCard = this.detectorType.equals("card");
+  /**
+   * Returns every barcode of the frame in one result, with its bounding box
+   * and corner points in preview view coordinates, and closes the scanner.
+   */
+  private void finishWithBarcodes(List<Barcode> results, Matrix toView, long detectedAt) {
+    int count = results.size();
+    float[] centers = new float[2 * count];
+    for (int i = 0; i < count; i++) {
+      boxRect.set(results.get(i).getBoundingBox());
+      toView.mapRect(boxRect);
+      centers[2 * i] = boxRect.centerX();
+      centers[2 * i + 1] = boxRect.centerY();
+    }
 
-    float height = mCameraView.getHeight();
-    float width = mCameraView.getWidth();
+    Integer[] order = new Integer[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
 
-    float diameterW = (float)(width * (isCard ? .84 : .75));
-    float diameterH = (float)(diameterW * (isCard ? .46 : 1));
+    RectF reticle = this.reticleRect;
+    if (sortByDistance && reticle != null) {
+      float cx = reticle.centerX();
+      float cy = reticle.centerY();
+      Arrays.sort(order, (a, b) -> Float.compare(
+        distanceSquared(centers[2 * a], centers[2 * a + 1], cx, cy),
+        distanceSquared(centers[2 * b], centers[2 * b + 1], cx, cy)));
+    }
 
-    Canvas canvas = holder.lockCanvas();
-    if (canvas == null) {
+    JSONArray list = new JSONArray();
+    try {
+      for (int index : order) {
+        list.put(toJson(results.get(index), toView));
+      }
+    } catch (JSONException e) {
+      Log.e("ReadyOpScanner", "Could not serialize the barcodes", e);
       return;
     }
 
-    canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+    if (session != null) {
+      if (session.deliverResult(list)) {
+        playFeedback(detectedAt);
+        setResult(CommonStatusCodes.SUCCESS);
+        finish();
+      }
+      return;
+    }
 
-    // border's properties
-    Paint paint = new Paint();
-    paint.setStyle(Paint.Style.STROKE);
-    paint.setColor(color);
-    paint.setStrokeWidth(5);
+    playFeedback(detectedAt);
+    Intent data = new Intent();
+    data.putExtra(BarcodeList, list.toString());
+    setResult(CommonStatusCodes.SUCCESS, data);
+    finish();
+  }
 
-    if (preview != null) {
-      canvas.drawBitmap(preview, 0, 0, paint);
+  private JSONObject toJson(Barcode barcode, Matrix toView) throws JSONException {
+    JSONObject json = new JSONObject();
+    json.put("value", getBarcodeValue(barcode));
+    json.put("format", barcode.getFormat());
+    json.put("type", barcode.getValueType());
+    if (returnRawBytes) {
+      // The list travels as one JSON string, so the bytes go as base64.
+      byte[] rawBytes = barcode.getRawBytes();
+      json.put("rawBytes", rawBytes != null ? Base64.encodeToString(rawBytes, Base64.NO_WRAP) : JSONObject.NULL);
     }
 
-    float left = width / 2 - diameterW / 2;
-    float top = height / 2 - diameterH / 2;
-    float right = width / 2 + diameterW / 2;
-    float bottom = height / 2 + diameterH / 2;
+    RectF bounds = new RectF(barcode.getBoundingBox());
+    toView.mapRect(bounds);
+    JSONObject box = new JSONObject();
+    box.put("x", bounds.left);
+    box.put("y", bounds.top);
+    box.put("width", bounds.width());
+    box.put("height", bounds.height());
+    json.put("boundingBox", box);
+
+    JSONArray corners = new JSONArray();
+    Point[] points = barcode.getCornerPoints();
+    if (points != null) {
+      float[] mapped = new float[2 * points.length];
+      for (int i = 0; i < points.length; i++) {
+        mapped[2 * i] = points[i].x;
+        mapped[2 * i + 1] = points[i].y;
+      }
+      toView.mapPoints(mapped);
+      for (int i = 0; i < points.length; i++) {
+        JSONObject point = new JSONObject();
+        point.put("x", mapped[2 * i]);
+        point.put("y", mapped[2 * i + 1]);
+        corners.put(point);
+      }
+    }
+    json.put("cornerPoints", corners);
+    return json;
+  }
 
-    if (this.reticleRect == null) {
-      this.reticleRect = new RectF(left, top, right, bottom);
+  private static float distanceSquared(float x, float y, float cx, float cy) {
+    return (x - cx) * (x - cx) + (y - cy) * (y - cy);
+  }
+
+  /**
+   * Returns the text of a barcode.
+   */
+  static String getBarcodeValue(Barcode barcode) {
+    String value = barcode.getRawValue();
+
+    // rawValue returns null if string is not UTF-8 encoded.
+    // If that's the case, we will decode it as ASCII,
+    // because it's the most common encoding for barcodes.
+    // e.g. https://www.barcodefaq.com/1d/code-128/
+    if (value == null) {
+      value = new String(barcode.getRawBytes(), StandardCharsets.US_ASCII);
     }
+    return value;
+  }
 
-    if (barcode != null) {
-      Paint boundingRectPaint = new Paint();
-      boundingRectPaint.setStyle(Paint.Style.STROKE);
-      boundingRectPaint.setColor(Color.YELLOW);
-      boundingRectPaint.setStrokeWidth(5.0f);
-      boundingRectPaint.setAlpha(200);
-      canvas.drawRect(barcode.getBoundingBox(), boundingRectPaint);
+  /**
+   * Computes the reticle from the preview size and hands it, as the region of
+   * interest when one is configured, to the analyzer.
+   */
+  private void updateReticleRect() {
+    if (mCameraView == null || mCameraView.getWidth() == 0 || mCameraView.getHeight() == 0) {
+      return;
     }
 
-    canvas.drawRoundRect(this.reticleRect, 50, 50, paint);
+    float height = mCameraView.getHeight();
+    float width = mCameraView.getWidth();
+
+    float[] roi = roiMode.equals("custom") ? getIntent().getFloatArrayExtra("roiRect") : null;
+
+    if (roi != null && roi.length == 4) {
+      // x, y, width and height as fractions of the preview.
+      this.reticleRect = new RectF(roi[0] * width, roi[1] * height, (roi[0] + roi[2]) * width,
+        (roi[1] + roi[3]) * height);
+    } else {
+      boolean isCard = this.detectorType.equals("card");
+
+      float diameterW = (float)(width * (isCard ? .84 : .75));
+      float diameterH = (float)(diameterW * (isCard ? .46 : 1));
 
-    // Draw the reticle line
-    paint.setARGB((int)(255 * 0.40), 255, 0, 0);
-    paint.setStyle(Paint.Style.FILL);
-    canvas.drawLine((left + 5), (float)((height / 2) - 2.5), (right - 10), (float)((height / 2) + 2.5), paint);
+      float left = width / 2 - diameterW / 2;
+      float top = height / 2 - diameterH / 2;
+      float right = width / 2 + diameterW / 2;
+      float bottom = height / 2 + diameterH / 2;
 
-    holder.unlockCanvasAndPost(canvas);
+      this.reticleRect = new RectF(left, top, right, bottom);
+    }
+
+    overlay.setReticle(reticleRect, height / 2);
+
+    if (analyzer != null) {
+      analyzer.setViewport(mCameraView.getWidth(), mCameraView.getHeight(), rotateCamera,
+        roiMode.equals("full") ? null : reticleRect);
+    }
   }
 }
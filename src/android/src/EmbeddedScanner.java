@@ -0,0 +1,235 @@
+package com.readyop.cordova.plugins.barcode.scanner;
+
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.view.LifecycleCameraController;
+import androidx.camera.view.PreviewView;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.readyop.cordova.plugins.barcode.scanner.utils.DuplicateFilter;
+import com.readyop.cordova.plugins.barcode.scanner.utils.LumaPrefilter;
+import com.readyop.cordova.plugins.barcode.scanner.utils.ResultChecks;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the camera preview and the analyzer inside the Cordova activity, so
+ * scanning needs no activity launch.
+ *
+ * <p>
+ * The preview either fills the screen behind the WebView, which is made
+ * transparent so the page draws its own UI over the camera, or sits on top of
+ * the WebView in a given rectangle. The camera is bound to the Cordova
+ * activity's lifecycle, and is kept, with the analyzer and the detector, from
+ * one {@link #show} to the next. {@link #pause()} only stops the analysis, so
+ * resuming costs nothing; {@link #hide()} also releases the camera but keeps
+ * everything else. All methods must be called on the main thread.
+ */
+public class EmbeddedScanner {
+
+  /** Receives new barcodes on the analyzer thread. */
+  public interface Listener {
+    void onBarcode(Barcode barcode);
+  }
+
+  private final Activity activity;
+  private final View webView;
+  private final ScannerResources resources;
+  private final Executor executor;
+
+  private PreviewView previewView;
+  private LifecycleCameraController cameraController;
+  private BarcodeAnalyzer analyzer;
+  private int analyzerFormats;
+  private Drawable webViewBackground;
+  private boolean behindWebView;
+  private boolean shown;
+  private boolean paused;
+
+  private volatile ResultChecks checks;
+  private volatile Listener listener;
+
+  public EmbeddedScanner(Activity activity, View webView) {
+    this.activity = activity;
+    this.webView = webView;
+    this.resources = ScannerResources.get(activity);
+    this.executor = resources.newSerialExecutor();
+  }
+
+  /**
+   * Shows the preview and starts analyzing.
+   *
+   * @param bounds  where to put the preview, in pixels relative to the
+   *                WebView, or null to fill the screen behind it
+   * @param formats format mask, as resolved by {@link ScannerResources#resolveFormats(int)}
+   * @throws IllegalStateException when the WebView is not in a FrameLayout,
+   *                               the only parent the preview can be placed in,
+   *                               or the activity is not a LifecycleOwner, as
+   *                               with cordova-android before 9
+   */
+  @SuppressLint("UnsafeOptInUsageError")
+  public void show(@Nullable RectF bounds, int formats, boolean prefilter, @NonNull DuplicateFilter duplicateFilter,
+      @NonNull Listener listener) {
+    if (!(webView.getParent() instanceof FrameLayout)) {
+      throw new IllegalStateException("The WebView's parent is not a FrameLayout");
+    }
+    if (!(activity instanceof LifecycleOwner)) {
+      throw new IllegalStateException("The activity is not a LifecycleOwner; cordova-android 9 or later is needed");
+    }
+    this.checks = new ResultChecks().setDuplicateFilter(duplicateFilter);
+    this.listener = listener;
+
+    if (previewView == null) {
+      // A TextureView based preview composes with the WebView in both
+      // placements, where a SurfaceView would punch through it.
+      previewView = new PreviewView(activity);
+      previewView.setImplementationMode(PreviewView.ImplementationMode.COMPATIBLE);
+      previewView.addOnLayoutChangeListener((view, left, top, right, bottom, oldLeft, oldTop, oldRight,
+          oldBottom) -> updateViewport());
+    }
+    place(bounds);
+
+    if (cameraController == null) {
+      cameraController = new LifecycleCameraController(activity);
+      cameraController.setTapToFocusEnabled(true);
+      cameraController.setImageAnalysisBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST);
+      previewView.setController(cameraController);
+    }
+
+    if (analyzer == null || analyzerFormats != formats) {
+      analyzer = new BarcodeAnalyzer(resources.getScanner(formats), executor, this::onBarcodes);
+      analyzer.setMetrics(resources.getMetrics());
+      analyzerFormats = formats;
+    }
+    analyzer.setPrefilter(prefilter ? new LumaPrefilter() : null);
+    updateViewport();
+
+    cameraController.setImageAnalysisAnalyzer(executor, analyzer);
+    if (!shown) {
+      cameraController.bindToLifecycle((LifecycleOwner) activity);
+    }
+    shown = true;
+    paused = false;
+  }
+
+  /** Stops analyzing frames; the preview keeps running. */
+  public void pause() {
+    if (shown && !paused) {
+      cameraController.clearImageAnalysisAnalyzer();
+      paused = true;
+    }
+  }
+
+  /** Analyzes frames again after {@link #pause()}. */
+  public void resume() {
+    if (shown && paused) {
+      cameraController.setImageAnalysisAnalyzer(executor, analyzer);
+      paused = false;
+    }
+  }
+
+  /**
+   * Removes the preview, releases the camera and drops the listener. The next
+   * {@link #show} reuses the controller, the analyzer and the detector.
+   */
+  public void hide() {
+    listener = null;
+    if (!shown) {
+      return;
+    }
+    cameraController.clearImageAnalysisAnalyzer();
+    cameraController.unbind();
+    detach();
+    shown = false;
+    paused = false;
+  }
+
+  /** Hides the scanner and drops everything it holds. */
+  public void release() {
+    hide();
+    if (previewView != null) {
+      previewView.setController(null);
+    }
+    previewView = null;
+    cameraController = null;
+    analyzer = null;
+  }
+
+  public boolean isShown() {
+    return shown;
+  }
+
+  public boolean isPaused() {
+    return paused;
+  }
+
+  /** Adds the preview to the WebView's parent, behind the WebView or over it in {@code bounds}. */
+  private void place(@Nullable RectF bounds) {
+    detach();
+
+    FrameLayout parent = (FrameLayout) webView.getParent();
+    if (bounds == null) {
+      parent.addView(previewView, parent.indexOfChild(webView),
+          new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+      webViewBackground = webView.getBackground();
+      webView.setBackgroundColor(Color.TRANSPARENT);
+      behindWebView = true;
+    } else {
+      FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(Math.round(bounds.width()),
+          Math.round(bounds.height()));
+      params.leftMargin = webView.getLeft() + Math.round(bounds.left);
+      params.topMargin = webView.getTop() + Math.round(bounds.top);
+      parent.addView(previewView, params);
+    }
+  }
+
+  private void detach() {
+    if (previewView != null && previewView.getParent() != null) {
+      ((ViewGroup) previewView.getParent()).removeView(previewView);
+    }
+    if (behindWebView) {
+      webView.setBackground(webViewBackground);
+      webViewBackground = null;
+      behindWebView = false;
+    }
+  }
+
+  private void updateViewport() {
+    if (analyzer != null && previewView != null && previewView.getWidth() > 0 && previewView.getHeight() > 0) {
+      analyzer.setViewport(previewView.getWidth(), previewView.getHeight(), false, null);
+    }
+  }
+
+  /**
+   * Passes on the barcodes not seen within the duplicate window. The camera
+   * keeps running between reads, so the same code is in frame after frame.
+   */
+  private void onBarcodes(@NonNull List<Barcode> barcodes, @NonNull Matrix toView) {
+    Listener listener = this.listener;
+    ResultChecks checks = this.checks;
+    if (listener == null || checks == null) {
+      return;
+    }
+
+    checks.nextFrame(System.nanoTime());
+    for (Barcode barcode : barcodes) {
+      if (checks.check(barcode.getFormat(), CaptureActivity.getBarcodeValue(barcode), barcode.getRawBytes())
+          == ResultChecks.Verdict.ACCEPTED) {
+        listener.onBarcode(barcode);
+      }
+    }
+  }
+}
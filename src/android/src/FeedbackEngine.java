@@ -0,0 +1,169 @@
+package com.readyop.cordova.plugins.barcode.scanner;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.SoundPool;
+import android.os.Build;
+import android.os.VibrationEffect;
+import android.os.Vibrator;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Plays the success beep and vibration the moment a barcode is accepted.
+ *
+ * <p>
+ * Nothing is loaded until the first scan that asks for feedback calls
+ * {@link #prepare()}; the beep is then decoded in the background into a
+ * {@link SoundPool}, which plays from memory on a low-latency path. Every
+ * beep gets its own stream, so quick reads in continuous mode overlap instead
+ * of cutting each other off. The time from detection to starting the beep
+ * goes to {@link PipelineMetrics}; the device's output buffer adds to it and
+ * is logged once on load. A load still running when {@link #release()} is
+ * called frees its own sound instead of installing it.
+ */
+public class FeedbackEngine {
+  private static final String TAG = "FeedbackEngine";
+
+  private static final int MAX_STREAMS = 4;
+  private static final int VIBRATION_MS = 200;
+
+  private final Context context;
+  private final Executor executor;
+  private final PipelineMetrics metrics;
+  private final AtomicBoolean loading = new AtomicBoolean();
+
+  private volatile SoundPool soundPool;
+  private volatile int beepId;
+  private volatile boolean beepLoaded;
+  private volatile Vibrator vibrator;
+  // Bumped by release(), so a load started before it knows it is stale.
+  private int generation;
+
+  public FeedbackEngine(Context context, Executor executor, PipelineMetrics metrics) {
+    this.context = context.getApplicationContext();
+    this.executor = executor;
+    this.metrics = metrics;
+  }
+
+  /** Loads the beep in the background, the first time only. */
+  public void prepare() {
+    if (loading.compareAndSet(false, true)) {
+      int loadGeneration;
+      synchronized (this) {
+        loadGeneration = generation;
+      }
+      executor.execute(() -> load(loadGeneration));
+    }
+  }
+
+  /**
+   * Starts the feedback for a barcode detected at {@code detectedAtNanos}, a
+   * {@link System#nanoTime()} value. Can be called on any thread. A beep asked
+   * for before the sound is loaded is skipped.
+   */
+  public void play(boolean beep, boolean vibrate, long detectedAtNanos) {
+    if (!beep && !vibrate) {
+      return;
+    }
+    prepare();
+
+    if (beep) {
+      SoundPool pool = soundPool;
+      if (pool != null && beepLoaded) {
+        pool.play(beepId, 1f, 1f, 1, 0, 1f);
+        metrics.recordFeedbackDelay(System.nanoTime() - detectedAtNanos);
+      } else {
+        Log.d(TAG, "Beep skipped, the sound is still loading");
+      }
+    }
+
+    if (vibrate) {
+      Vibrator vibrator = this.vibrator;
+      if (vibrator == null) {
+        vibrator = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
+        this.vibrator = vibrator;
+      }
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+        vibrator.vibrate(VibrationEffect.createOneShot(VIBRATION_MS, VibrationEffect.DEFAULT_AMPLITUDE));
+      } else {
+        // deprecated in API 26 aka Oreo
+        vibrator.vibrate(VIBRATION_MS);
+      }
+    }
+  }
+
+  /** Frees the sound; a later {@link #prepare()} loads it again. */
+  public void release() {
+    SoundPool pool;
+    synchronized (this) {
+      generation++;
+      pool = soundPool;
+      soundPool = null;
+      beepLoaded = false;
+      loading.set(false);
+    }
+    if (pool != null) {
+      pool.release();
+    }
+  }
+
+  private void load(int loadGeneration) {
+    long start = System.nanoTime();
+    if (vibrator == null) {
+      vibrator = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
+    }
+
+    SoundPool pool = new SoundPool.Builder()
+        .setMaxStreams(MAX_STREAMS)
+        .setAudioAttributes(new AudioAttributes.Builder()
+            .setUsage(AudioAttributes.USAGE_ASSISTANCE_SONIFICATION)
+            .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+            .build())
+        .build();
+    pool.setOnLoadCompleteListener((loaded, sampleId, status) -> {
+      synchronized (this) {
+        if (loadGeneration != generation) {
+          return;
+        }
+        beepLoaded = status == 0;
+      }
+      Log.d(TAG, "Beep loaded in " + (System.nanoTime() - start) / 1000000 + " ms, output buffer about "
+          + getOutputBufferMs() + " ms");
+    });
+
+    int id = 0;
+    try (AssetFileDescriptor descriptor = context.getAssets().openFd("beep.ogg")) {
+      id = pool.load(descriptor, 1);
+    } catch (IOException e) {
+      Log.w(TAG, "Could not load the beep", e);
+    }
+
+    synchronized (this) {
+      if (loadGeneration == generation) {
+        beepId = id;
+        soundPool = pool;
+        return;
+      }
+    }
+    // Released while loading.
+    pool.release();
+  }
+
+  /** Length of one buffer of the audio output, the least a sound waits to be heard. */
+  private long getOutputBufferMs() {
+    AudioManager audio = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+    try {
+      int frames = Integer.parseInt(audio.getProperty(AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER));
+      int rate = Integer.parseInt(audio.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE));
+      return rate > 0 ? frames * 1000L / rate : -1;
+    } catch (NumberFormatException | NullPointerException e) {
+      return -1;
+    }
+  }
+}
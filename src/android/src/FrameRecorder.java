@@ -0,0 +1,103 @@
+package com.readyop.cordova.plugins.barcode.scanner;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.camera.core.ImageProxy;
+
+import com.readyop.cordova.plugins.barcode.scanner.utils.BitmapUtils;
+import com.readyop.cordova.plugins.barcode.scanner.utils.FrameReplay;
+import com.readyop.cordova.plugins.barcode.scanner.utils.FrameWriter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the frames the analyzer works on to a recording, to reproduce a
+ * field problem or benchmark the pipeline off the device with
+ * {@link FrameReplay}.
+ *
+ * <p>
+ * Recordings go to the app's external files directory, under
+ * {@code frames/}, where {@code adb pull} can reach them. The planes are
+ * written on the analyzer thread as the camera delivered them, which slows
+ * analysis down, so this is for debugging only. Recording stops after
+ * {@code maxFrames} frames or at the first write error.
+ */
+public class FrameRecorder implements Closeable {
+  private static final String TAG = "FrameRecorder";
+
+  private final File file;
+  private final int maxFrames;
+  private FrameWriter writer;
+  private int frames;
+
+  private FrameRecorder(File file, int maxFrames) throws IOException {
+    this.file = file;
+    this.maxFrames = maxFrames;
+    this.writer = new FrameWriter(file);
+  }
+
+  /** Starts a new recording of at most {@code maxFrames} frames. */
+  public static FrameRecorder create(Context context, int maxFrames) throws IOException {
+    File dir = context.getExternalFilesDir("frames");
+    if (dir == null) {
+      dir = new File(context.getFilesDir(), "frames");
+    }
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Could not create " + dir);
+    }
+    return new FrameRecorder(new File(dir, "frames-" + System.currentTimeMillis() + ".rof"), maxFrames);
+  }
+
+  /** Appends a frame; called on the analyzer thread before the frame is analyzed. */
+  public synchronized void record(ImageProxy image) {
+    if (writer == null || frames >= maxFrames) {
+      return;
+    }
+
+    ImageProxy.PlaneProxy[] planes = image.getPlanes();
+    ByteBuffer[] buffers = new ByteBuffer[planes.length];
+    int[] rowStrides = new int[planes.length];
+    int[] pixelStrides = new int[planes.length];
+    for (int i = 0; i < planes.length; i++) {
+      buffers[i] = planes[i].getBuffer();
+      rowStrides[i] = planes[i].getRowStride();
+      pixelStrides[i] = planes[i].getPixelStride();
+    }
+
+    try {
+      writer.write(BitmapUtils.getFrameMetadata(image), buffers, rowStrides, pixelStrides);
+      if (++frames == maxFrames) {
+        Log.i(TAG, "Recorded " + maxFrames + " frames to " + file);
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      Log.w(TAG, "Recording stopped", e);
+      close();
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public synchronized int getFrameCount() {
+    return frames;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (writer == null) {
+      return;
+    }
+    Log.i(TAG, writer.getFrameCount() + " frames, " + writer.getBytesWritten() + " bytes, recorded to " + file);
+    try {
+      writer.close();
+    } catch (IOException e) {
+      Log.w(TAG, "Could not close " + file, e);
+    }
+    writer = null;
+  }
+}
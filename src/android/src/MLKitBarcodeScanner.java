@@ -1,5 +1,6 @@
 package com.readyop.cordova.plugins.barcode.scanner;
 
+import android.Manifest;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.Context;
@@ -7,15 +8,23 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.res.AssetFileDescriptor;
+import android.graphics.RectF;
 import android.hardware.camera2.CameraManager;
-import android.media.MediaPlayer;
-import android.os.Build;
+import android.net.Uri;
 import android.os.Bundle;
-import android.os.VibrationEffect;
-import android.os.Vibrator;
+import android.os.SystemClock;
+import android.util.Base64;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import com.google.android.gms.common.api.CommonStatusCodes;
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.readyop.cordova.plugins.barcode.scanner.utils.AamvaParser;
+import com.readyop.cordova.plugins.barcode.scanner.utils.BitmapUtils;
+import com.readyop.cordova.plugins.barcode.scanner.utils.DuplicateFilter;
+import com.readyop.cordova.plugins.barcode.scanner.utils.LookupIndex;
 
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaInterface;
@@ -26,7 +35,15 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 /**
  * This class echoes a string called from JavaScript.
@@ -34,38 +51,132 @@ import java.io.IOException;
 public class MLKitBarcodeScanner extends CordovaPlugin {
 
   private static final int RC_BARCODE_CAPTURE = 9001;
+  private static final int RC_EMBEDDED_CAMERA_PERM = 9002;
   private CallbackContext _CallbackContext;
-  private Boolean _BeepOnSuccess;
-  private Boolean _VibrateOnSuccess;
-  private MediaPlayer _MediaPlayer;
-  private Vibrator _Vibrator;
+  private ScanSession _Session;
+  private volatile ScanTimeline _Timeline;
+  // Sends the results of the current scan one at a time, in order.
+  private Executor _ResultExecutor;
+  private final Map<String, BatchImageScanner> _Batches = new ConcurrentHashMap<>();
+  private boolean _RawBytes;
+  private boolean _ParseLicense;
+  private EmbeddedScanner _Embedded;
+  private CallbackContext _EmbeddedCallback;
+  private JSONObject _PendingShowConfig;
+  private CallbackContext _PendingShowCallback;
 
   public void initialize(CordovaInterface cordova, CordovaWebView webView) {
     super.initialize(cordova, webView);
 
     Context context = cordova.getContext();
 
-    _Vibrator = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
-    _MediaPlayer = new MediaPlayer();
+    // Opt-in warm-up, so the first scan does not pay for loading the detector.
+    if (preferences.getBoolean("BarcodeScannerPrepare", false)) {
+      ScannerResources.get(context).prepare(ScannerResources.resolveFormats(0), () -> { });
+    }
+  }
 
-    try {
-      AssetFileDescriptor descriptor = context.getAssets().openFd("beep.ogg");
-      _MediaPlayer.setDataSource(descriptor.getFileDescriptor(), descriptor.getStartOffset(), descriptor.getLength());
-      descriptor.close();
-      _MediaPlayer.prepare();
-    } catch (IOException e) {
-      e.printStackTrace();
+  @Override
+  public void onDestroy() {
+    if (_Embedded != null) {
+      _Embedded.release();
+      _Embedded = null;
     }
+    endEmbeddedCallbacks();
+    ScannerResources.shutdown();
+    super.onDestroy();
   }
 
   @Override
   public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
+    long entryNanos = SystemClock.elapsedRealtimeNanos();
+
+    if (action.equals("stopScan")) {
+      ScanSession session = ScanSession.getActive();
+      if (session != null) {
+        session.stop();
+      }
+      callbackContext.success();
+      return true;
+    }
+
+    if (action.equals("getMetrics")) {
+      JSONObject options = args.optJSONObject(0);
+      callbackContext.success(getMetrics(options != null && options.optBoolean("reset", false)));
+      return true;
+    }
+
+    if (action.equals("scanImage")) {
+      String image = args.getString(0);
+      JSONObject config = args.optJSONObject(1);
+      int formats = ScannerResources.resolveFormats(config != null ? config.optInt("formats", 1234) : 1234);
+      ScannerResources resources = ScannerResources.get(cordova.getContext());
+      // Decoding and waiting for the detector block, so keep off the worker pool.
+      resources.getBatchExecutor().execute(() -> scanImage(resources.getScanner(formats), image, callbackContext));
+      return true;
+    }
+
+    if (action.equals("scanImages")) {
+      scanImages(args.getJSONArray(0), args.getJSONObject(1), callbackContext);
+      return true;
+    }
+
+    if (action.equals("cancelScanImages")) {
+      BatchImageScanner batch = _Batches.get(args.getString(0));
+      if (batch != null) {
+        batch.cancel();
+      }
+      callbackContext.success();
+      return true;
+    }
+
+    if (action.equals("loadLookupSet")) {
+      String source = args.getString(0);
+      ScannerResources resources = ScannerResources.get(cordova.getContext());
+      // Reading and indexing a large set takes a while, so keep off the worker pool.
+      resources.getBatchExecutor().execute(() -> loadLookupSet(resources, source, callbackContext));
+      return true;
+    }
+
+    if (action.equals("clearLookupSet")) {
+      ScannerResources.get(cordova.getContext()).setLookupIndex(null);
+      callbackContext.success();
+      return true;
+    }
+
+    if (action.equals("prepare")) {
+      JSONObject config = args.getJSONObject(0);
+      int formats = ScannerResources.resolveFormats(config.optInt("formats", 1234));
+      ScannerResources.get(cordova.getContext()).prepare(formats, config.optBoolean("shardDetectors", false),
+          callbackContext::success);
+      return true;
+    }
+
+    if (action.equals("hide") || action.equals("pause") || action.equals("resume")) {
+      if (action.equals("hide")) {
+        // Ended here rather than on the UI thread, so a show that follows
+        // right away keeps its callback.
+        endEmbeddedCallbacks();
+      }
+      cordova.getActivity().runOnUiThread(() -> {
+        if (_Embedded != null) {
+          if (action.equals("hide")) {
+            _Embedded.hide();
+          } else if (action.equals("pause")) {
+            _Embedded.pause();
+          } else {
+            _Embedded.resume();
+          }
+        }
+        callbackContext.success();
+      });
+      return true;
+    }
+
     Activity activity = cordova.getActivity();
     Boolean hasCamera = activity.getPackageManager().hasSystemFeature(PackageManager.FEATURE_CAMERA_ANY);
     CameraManager cameraManager = (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);
 
-    _CallbackContext = callbackContext;
-
     int numberOfCameras = 0;
 
     try {
@@ -90,7 +201,54 @@ public class MLKitBarcodeScanner extends CordovaPlugin {
       return false;
     }
 
+    if (action.equals("show")) {
+      JSONObject config = args.getJSONObject(0);
+      if (!cordova.hasPermission(Manifest.permission.CAMERA)) {
+        // A show made while the prompt is up replaces the pending one, whose
+        // callback is ended, and waits for the same prompt.
+        boolean prompting = _PendingShowCallback != null;
+        if (prompting) {
+          _PendingShowCallback.sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT));
+        }
+        _PendingShowConfig = config;
+        _PendingShowCallback = callbackContext;
+        if (!prompting) {
+          cordova.requestPermission(this, RC_EMBEDDED_CAMERA_PERM, Manifest.permission.CAMERA);
+        }
+        return true;
+      }
+      showEmbedded(config, callbackContext);
+      return true;
+    }
+
     if (action.equals("startScan")) {
+      long scanStartedAt = SystemClock.elapsedRealtime();
+      boolean continuous = args.getJSONObject(0).optBoolean("continuous", false);
+      ScanTimeline timeline = new ScanTimeline(entryNanos);
+      Executor results = ScannerResources.get(cordova.getContext()).newSerialExecutor();
+      ScanSession session = ScanSession.begin(callbackContext.getCallbackId(), continuous, timeline,
+          new ScanSession.Callback() {
+            @Override
+            public void onBarcode(ScanSession session, Barcode barcode) {
+              sendBarcode(session, barcode, results);
+            }
+
+            @Override
+            public void onBarcodeList(ScanSession session, JSONArray barcodes) {
+              results.execute(() -> sendBarcodeList(barcodes));
+            }
+          });
+      if (session == null) {
+        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "SCANNER_OPEN"));
+        return true;
+      }
+
+      _Timeline = timeline;
+      _ResultExecutor = results;
+
+      _CallbackContext = callbackContext;
+      _Session = session;
+
       class OneShotTask implements Runnable {
         private final Context context;
         private final JSONArray args;
@@ -102,41 +260,566 @@ public class MLKitBarcodeScanner extends CordovaPlugin {
 
         public void run() {
           try {
-            openNewActivity(context, args);
-          } catch (JSONException e) {
+            openNewActivity(context, args, session.getRequestId(), scanStartedAt);
+          } catch (JSONException | RuntimeException e) {
+            // No activity will report back, so free the session for the next scan.
+            session.end();
+            _Session = null;
             _CallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, e.toString()));
           }
         }
       }
-      Thread t = new Thread(new OneShotTask(cordova.getContext(), args));
-      t.start();
+      ScannerResources.get(cordova.getContext()).getExecutor().execute(new OneShotTask(cordova.getContext(), args));
       return true;
     }
     return false;
   }
 
-  private void openNewActivity(Context context, JSONArray args) throws JSONException {
+  private void openNewActivity(Context context, JSONArray args, String requestId, long scanStartedAt)
+      throws JSONException {
     JSONObject config = args.getJSONObject(0);
     Intent intent = new Intent(context, CaptureActivity.class);
+    intent.putExtra("requestId", requestId);
+    intent.putExtra("scanStartedAt", scanStartedAt);
     intent.putExtra("formats", config.optInt("formats", 1234));
     intent.putExtra("detectorType", config.optString("detectorType", ""));
     intent.putExtra("rotateCamera", config.optBoolean("rotateCamera", false));
     intent.putExtra("showTorchButton", config.optBoolean("showTorchButton", false));
+    intent.putExtra("prefilter", config.optBoolean("prefilter", false));
+    intent.putExtra("shardDetectors", config.optBoolean("shardDetectors", false));
+    intent.putExtra("lookupSet", config.optBoolean("lookupSet", false));
+    intent.putExtra("validateCheckDigits", config.optBoolean("validateCheckDigits", false));
+    JSONObject consensus = config.optJSONObject("consensus");
+    if (consensus != null) {
+      int votes = Math.max(1, consensus.optInt("votes", 2));
+      intent.putExtra("consensusVotes", votes);
+      intent.putExtra("consensusFrames", Math.max(votes, consensus.optInt("frames", votes + 1)));
+    }
+    if (!config.isNull("adaptiveFormats")) {
+      intent.putExtra("adaptiveFormats", config.optString("adaptiveFormats", ""));
+    }
+    intent.putExtra("continuous", config.optBoolean("continuous", false));
+    intent.putExtra("multiCode", config.optBoolean("multiCode", false));
+    intent.putExtra("sortByDistance", config.optBoolean("sortByDistance", false));
+    intent.putExtra("rawBytes", config.optBoolean("rawBytes", false));
+    intent.putExtra("recordFrames", config.optInt("recordFrames", 0));
+    intent.putExtra("duplicateWindow", config.optInt("duplicateWindow", 2000));
+    intent.putExtra("duplicateCacheSize", config.optInt("duplicateCacheSize", 256));
+
+    putAnalysisSettings(intent, config);
 
-    _BeepOnSuccess = config.optBoolean("beepOnSuccess", false);
-    _VibrateOnSuccess = config.optBoolean("vibrateOnSuccess", false);
+    JSONObject roi = config.optJSONObject("roi");
+    if (roi != null) {
+      intent.putExtra("roi", "custom");
+      intent.putExtra("roiRect", new float[] { (float) roi.optDouble("x", 0), (float) roi.optDouble("y", 0),
+          (float) roi.optDouble("w", 1), (float) roi.optDouble("h", 1) });
+    } else {
+      intent.putExtra("roi", config.optString("roi", "full"));
+    }
+
+    boolean beep = config.optBoolean("beepOnSuccess", false);
+    intent.putExtra("beepOnSuccess", beep);
+    intent.putExtra("vibrateOnSuccess", config.optBoolean("vibrateOnSuccess", false));
+    if (beep) {
+      // Loads in the background while the activity starts the camera.
+      ScannerResources.get(cordova.getContext()).getFeedback().prepare();
+    }
+    _RawBytes = config.optBoolean("rawBytes", false);
+    _ParseLicense = config.optBoolean("parseLicense", false);
 
     this.cordova.setActivityResultCallback(this);
     this.cordova.startActivityForResult(this, intent, RC_BARCODE_CAPTURE);
   }
 
+  /**
+   * Sends a barcode handed over by the activity. A continuous session keeps
+   * the callback alive for the next one.
+   *
+   * <p>
+   * Every result of a session goes through {@code results}, so a PDF417 code
+   * whose licence is parsed first cannot overtake or trail the others.
+   * Results of a continuous session that run after it was stopped or ended
+   * are dropped, since its callback is released then.
+   */
+  private void sendBarcode(ScanSession session, Barcode barcode, Executor results) {
+    CallbackContext callbackContext = _CallbackContext;
+    String value = CaptureActivity.getBarcodeValue(barcode);
+    JSONArray result = new JSONArray();
+    result.put(value);
+    result.put(barcode.getFormat());
+    result.put(barcode.getValueType());
+    putTimeline(result);
+
+    boolean parseLicense = _ParseLicense && barcode.getFormat() == Barcode.FORMAT_PDF417;
+    boolean rawBytes = _RawBytes;
+
+    // This runs on the analyzer thread; licences are parsed on the pool so the next frame is not held up.
+    results.execute(() -> {
+      if (session.isContinuous() && (session.isStopRequested() || session.isEnded())) {
+        return;
+      }
+      if (parseLicense) {
+        putLicense(result, barcode.getDriverLicense(), value);
+      }
+      PluginResult pluginResult = toPluginResult(result, barcode.getRawBytes(), rawBytes);
+      pluginResult.setKeepCallback(session.isContinuous());
+      callbackContext.sendPluginResult(pluginResult);
+    });
+  }
+
+  /**
+   * Adds the parsed licence or ID fields, from ML Kit and the raw AAMVA text,
+   * as the fifth element of a result.
+   */
+  private static void putLicense(JSONArray result, @Nullable Barcode.DriverLicense license, @Nullable String raw) {
+    try {
+      JSONObject fields = AamvaParser.toJson(license, raw);
+      if (fields != null) {
+        result.put(4, fields);
+      }
+    } catch (JSONException e) {
+      Log.w("MLKitBarcodeScanner", "Could not add the licence fields", e);
+    }
+  }
+
+  /**
+   * Shows the embedded scanner, reusing the one already created. A new call
+   * takes over from the callback of the previous one, which is released.
+   */
+  private void showEmbedded(JSONObject config, CallbackContext callbackContext) {
+    RectF bounds = null;
+    JSONObject rect = config.optJSONObject("rect");
+    if (rect != null) {
+      // CSS pixels of the page to view pixels.
+      float density = webView.getView().getResources().getDisplayMetrics().density;
+      float x = (float) rect.optDouble("x", 0) * density;
+      float y = (float) rect.optDouble("y", 0) * density;
+      bounds = new RectF(x, y, x + (float) rect.optDouble("width", 0) * density,
+          y + (float) rect.optDouble("height", 0) * density);
+    }
+
+    int formats = ScannerResources.resolveFormats(config.optInt("formats", 1234));
+    boolean prefilter = config.optBoolean("prefilter", false);
+    DuplicateFilter duplicateFilter = new DuplicateFilter(config.optInt("duplicateWindow", 2000),
+        Math.max(1, config.optInt("duplicateCacheSize", 256)));
+    boolean beep = config.optBoolean("beepOnSuccess", false);
+    boolean vibrate = config.optBoolean("vibrateOnSuccess", false);
+    boolean rawBytes = config.optBoolean("rawBytes", false);
+    FeedbackEngine feedback = ScannerResources.get(cordova.getContext()).getFeedback();
+    if (beep) {
+      feedback.prepare();
+    }
+
+    CallbackContext previous = _EmbeddedCallback;
+    _EmbeddedCallback = callbackContext;
+    if (previous != null && previous != callbackContext) {
+      previous.sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT));
+    }
+
+    final RectF showBounds = bounds;
+    cordova.getActivity().runOnUiThread(() -> {
+      if (_Embedded == null) {
+        _Embedded = new EmbeddedScanner(cordova.getActivity(), webView.getView());
+      }
+      try {
+        _Embedded.show(showBounds, formats, prefilter, duplicateFilter, barcode -> {
+          feedback.play(beep, vibrate, System.nanoTime());
+
+          JSONArray result = new JSONArray();
+          result.put(CaptureActivity.getBarcodeValue(barcode));
+          result.put(barcode.getFormat());
+          result.put(barcode.getValueType());
+
+          PluginResult pluginResult = toPluginResult(result, barcode.getRawBytes(), rawBytes);
+          pluginResult.setKeepCallback(true);
+          callbackContext.sendPluginResult(pluginResult);
+        });
+      } catch (IllegalStateException e) {
+        if (_EmbeddedCallback == callbackContext) {
+          _EmbeddedCallback = null;
+        }
+        callbackContext.error(e.getMessage());
+      }
+    });
+  }
+
+  /**
+   * Ends the callbacks of the embedded scanner and of a show waiting for the
+   * camera permission, without calling them, once the scanner is hidden.
+   */
+  private void endEmbeddedCallbacks() {
+    if (_EmbeddedCallback != null) {
+      _EmbeddedCallback.sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT));
+      _EmbeddedCallback = null;
+    }
+    if (_PendingShowCallback != null) {
+      _PendingShowCallback.sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT));
+      _PendingShowCallback = null;
+      _PendingShowConfig = null;
+    }
+  }
+
+  @Override
+  public void onRequestPermissionResult(int requestCode, String[] permissions, int[] grantResults) {
+    if (requestCode != RC_EMBEDDED_CAMERA_PERM || _PendingShowCallback == null) {
+      return;
+    }
+    JSONObject config = _PendingShowConfig;
+    CallbackContext callbackContext = _PendingShowCallback;
+    _PendingShowConfig = null;
+    _PendingShowCallback = null;
+
+    if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+      showEmbedded(config, callbackContext);
+    } else {
+      callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "NO_CAMERA_PERMISSION"));
+    }
+  }
+
+  /**
+   * Resolves the analysis preset and any explicit overrides into the analysis
+   * rate, detector duty cycle and resolution extras.
+   */
+  private void putAnalysisSettings(Intent intent, JSONObject config) {
+    double fps = 0;
+    double maxDuty = 1;
+    String resolution = null;
+
+    switch (config.optString("analysisPreset", "")) {
+      case "throughput":
+        fps = 30;
+        resolution = "1280x720";
+        break;
+      case "balanced":
+        fps = 15;
+        maxDuty = 0.75;
+        resolution = "1280x720";
+        break;
+      case "battery":
+        fps = 8;
+        maxDuty = 0.5;
+        resolution = "640x480";
+        break;
+      default:
+        break;
+    }
+
+    fps = config.optDouble("analysisFps", fps);
+    resolution = config.optString("analysisResolution", resolution);
+
+    intent.putExtra("analysisFps", (float) fps);
+    intent.putExtra("analysisMaxDuty", (float) maxDuty);
+
+    if (resolution != null) {
+      String[] size = resolution.toLowerCase().split("x");
+      if (size.length == 2) {
+        try {
+          intent.putExtra("analysisWidth", Integer.parseInt(size[0].trim()));
+          intent.putExtra("analysisHeight", Integer.parseInt(size[1].trim()));
+        } catch (NumberFormatException e) {
+          Log.w("MLKitBarcodeScanner", "Ignoring analysisResolution: " + resolution);
+        }
+      }
+    }
+  }
+
+  /**
+   * Scans a still image given as a file or content URI, a data URL or plain
+   * base64, and sends every barcode found. Runs on the worker pool.
+   */
+  private void scanImage(BarcodeScanner scanner, String image, CallbackContext callbackContext) {
+    try {
+      callbackContext.success(toJson(new StillImageScanner(scanner).scan(getImageSource(image))));
+    } catch (IOException | ExecutionException | JSONException e) {
+      callbackContext.error(e.getMessage() != null ? e.getMessage() : e.toString());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      callbackContext.error("Interrupted");
+    }
+  }
+
+  /**
+   * Scans a list of images on the batch pool, streaming one result per image
+   * and a final one with {@code done} set. The batch can be cancelled by the
+   * {@code batchId} given in the config.
+   */
+  private void scanImages(JSONArray images, JSONObject config, CallbackContext callbackContext)
+      throws JSONException {
+    List<BitmapUtils.ImageSource> sources = new ArrayList<>();
+    for (int i = 0; i < images.length(); i++) {
+      sources.add(getImageSource(images.getString(i)));
+    }
+
+    String batchId = config.optString("batchId", "");
+    int formats = ScannerResources.resolveFormats(config.optInt("formats", 1234));
+    ScannerResources resources = ScannerResources.get(cordova.getContext());
+
+    // Default to a quarter of the heap for bitmaps in flight.
+    long budget = config.has("memoryBudgetMb") ? config.optLong("memoryBudgetMb", 0) * 1024 * 1024
+        : Runtime.getRuntime().maxMemory() / 4;
+
+    BatchImageScanner batch = new BatchImageScanner(new StillImageScanner(resources.getScanner(formats)), sources,
+        resources.getBatchThreadCount(), budget, new BatchImageScanner.Listener() {
+          @Override
+          public void onImage(int index, List<Barcode> barcodes, String error, int completed, int total) {
+            try {
+              JSONObject result = new JSONObject();
+              result.put("index", index);
+              result.put("completed", completed);
+              result.put("total", total);
+              if (barcodes != null) {
+                result.put("barcodes", toJson(barcodes));
+              } else {
+                result.put("error", error);
+              }
+              PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, result);
+              pluginResult.setKeepCallback(true);
+              callbackContext.sendPluginResult(pluginResult);
+            } catch (JSONException e) {
+              Log.e("MLKitBarcodeScanner", "Could not send the result of image " + index, e);
+            }
+          }
+
+          @Override
+          public void onDone(int completed, int total, boolean cancelled) {
+            _Batches.remove(batchId);
+            try {
+              JSONObject result = new JSONObject();
+              result.put("done", true);
+              result.put("completed", completed);
+              result.put("total", total);
+              result.put("cancelled", cancelled);
+              callbackContext.success(result);
+            } catch (JSONException e) {
+              callbackContext.error(e.toString());
+            }
+          }
+        });
+
+    _Batches.put(batchId, batch);
+    batch.start(resources.getBatchExecutor());
+  }
+
+  /**
+   * Reads an image given as a URI, an absolute file path, a data URL or plain
+   * base64. A leading slash is a path when the file exists, since base64 JPEG
+   * data starts with one too. Invalid base64 fails when the image is read.
+   */
+  private BitmapUtils.ImageSource getImageSource(String image) {
+    if (image.contains("://") && !image.startsWith("data:")) {
+      return BitmapUtils.fromUri(cordova.getContext().getContentResolver(), Uri.parse(image));
+    }
+    if (image.startsWith("/") && new File(image).isFile()) {
+      return BitmapUtils.fromUri(cordova.getContext().getContentResolver(), Uri.fromFile(new File(image)));
+    }
+    try {
+      return BitmapUtils.fromBytes(Base64.decode(image.substring(image.indexOf(',') + 1), Base64.DEFAULT));
+    } catch (IllegalArgumentException e) {
+      return () -> {
+        throw new IOException("Invalid base64 image data");
+      };
+    }
+  }
+
+  /**
+   * Loads the codes scans can be restricted to, one per line, from base64
+   * data or a URI, replacing the ones loaded before. Reports the number of
+   * codes, the load time and the memory the index takes.
+   */
+  private void loadLookupSet(ScannerResources resources, String source, CallbackContext callbackContext) {
+    long start = SystemClock.elapsedRealtimeNanos();
+    try {
+      LookupIndex index = readLookupSet(source);
+      resources.setLookupIndex(index);
+
+      double loadMs = (SystemClock.elapsedRealtimeNanos() - start) / 1000 / 1000.0;
+      Log.d("ReadyOpScanner", "Loaded " + index.size() + " lookup codes in " + loadMs + " ms, "
+          + index.getFootprintBytes() + " bytes");
+
+      JSONObject result = new JSONObject();
+      result.put("count", index.size());
+      result.put("duplicates", index.getDuplicates());
+      result.put("loadMs", loadMs);
+      result.put("bytes", index.getFootprintBytes());
+      callbackContext.success(result);
+    } catch (IOException | JSONException e) {
+      callbackContext.error(e.getMessage() != null ? e.getMessage() : e.toString());
+    }
+  }
+
+  /**
+   * Reads a lookup set from a URI, a file path or base64 data. Files are read
+   * into an array of their length and decoded base64 is indexed in place, so
+   * loading holds one copy of the text.
+   */
+  private LookupIndex readLookupSet(String source) throws IOException {
+    Uri uri = null;
+    if (source.contains("://") && !source.startsWith("data:")) {
+      uri = Uri.parse(source);
+    } else if (source.startsWith("/") && new File(source).isFile()) {
+      uri = Uri.fromFile(new File(source));
+    }
+
+    if (uri == null) {
+      try {
+        return LookupIndex.build(Base64.decode(source.substring(source.indexOf(',') + 1), Base64.DEFAULT));
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Invalid base64 lookup set data");
+      }
+    }
+
+    AssetFileDescriptor descriptor = cordova.getContext().getContentResolver().openAssetFileDescriptor(uri, "r");
+    if (descriptor == null) {
+      throw new IOException("Could not open " + source);
+    }
+    // The length is UNKNOWN_LENGTH, -1, for streams such as pipes.
+    try (InputStream stream = descriptor.createInputStream()) {
+      return LookupIndex.read(stream, descriptor.getLength());
+    } finally {
+      descriptor.close();
+    }
+  }
+
+  private static JSONArray toJson(List<Barcode> barcodes) throws JSONException {
+    JSONArray result = new JSONArray();
+    for (Barcode barcode : barcodes) {
+      JSONObject json = new JSONObject();
+      json.put("value", CaptureActivity.getBarcodeValue(barcode));
+      json.put("format", barcode.getFormat());
+      json.put("type", barcode.getValueType());
+      result.put(json);
+    }
+    return result;
+  }
+
+  /**
+   * Sends the barcodes of a multi-code scan as a single result. With
+   * parseLicense, PDF417 entries get a {@code license} parsed from their text,
+   * as ML Kit's own parse does not survive the list.
+   */
+  private void sendBarcodeList(JSONArray barcodes) {
+    try {
+      if (_ParseLicense) {
+        for (int i = 0; i < barcodes.length(); i++) {
+          JSONObject barcode = barcodes.getJSONObject(i);
+          if (barcode.optInt("format", 0) == Barcode.FORMAT_PDF417) {
+            JSONObject fields = AamvaParser.toJson(null, barcode.optString("value", null));
+            if (fields != null) {
+              barcode.put("license", fields);
+            }
+          }
+        }
+      }
+
+      JSONObject result = new JSONObject();
+      result.put("barcodes", barcodes);
+
+      ScanTimeline timeline = _Timeline;
+      if (timeline != null) {
+        timeline.mark(ScanTimeline.Stage.CALLBACK);
+        result.put("timings", timeline.toJson());
+      }
+      _CallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
+    } catch (JSONException e) {
+      _CallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, e.toString()));
+    }
+  }
+
+  /**
+   * Wraps a scan result. When raw bytes were requested, the result is sent as
+   * a multipart message whose second part is the bytes as an ArrayBuffer, so
+   * binary payloads reach JS without a lossy string conversion.
+   */
+  private PluginResult toPluginResult(JSONArray result, @Nullable byte[] rawBytes, boolean withRawBytes) {
+    if (!withRawBytes) {
+      return new PluginResult(PluginResult.Status.OK, result);
+    }
+
+    List<PluginResult> parts = new ArrayList<>();
+    parts.add(new PluginResult(PluginResult.Status.OK, result));
+    parts.add(new PluginResult(PluginResult.Status.OK, rawBytes != null ? rawBytes : new byte[0]));
+    return new PluginResult(PluginResult.Status.OK, parts);
+  }
+
+  /**
+   * Marks the callback dispatch and appends the stage timings of the current
+   * scan to a result.
+   */
+  private void putTimeline(JSONArray result) {
+    ScanTimeline timeline = _Timeline;
+    if (timeline == null) {
+      return;
+    }
+    timeline.mark(ScanTimeline.Stage.CALLBACK);
+    try {
+      result.put(timeline.toJson());
+    } catch (JSONException e) {
+      Log.w("MLKitBarcodeScanner", "Could not add the scan timings", e);
+    }
+  }
+
+  /**
+   * Returns the stage timings of the most recent scan and the analysis loop
+   * metrics, optionally clearing the latter.
+   */
+  private JSONObject getMetrics(boolean reset) throws JSONException {
+    JSONObject metrics = new JSONObject();
+    ScanTimeline timeline = _Timeline;
+    metrics.put("timeline", timeline != null ? timeline.toJson() : new JSONObject());
+
+    PipelineMetrics pipeline = ScannerResources.get(cordova.getContext()).getMetrics();
+    metrics.put("pipeline", pipeline.toJson());
+    if (reset) {
+      pipeline.reset();
+    }
+    return metrics;
+  }
+
   @Override
   public void onActivityResult(int requestCode, int resultCode, Intent data) {
     super.onActivityResult(requestCode, resultCode, data);
 
     if (requestCode == RC_BARCODE_CAPTURE) {
+      ScanTimeline timeline = _Timeline;
+      if (timeline != null) {
+        timeline.mark(ScanTimeline.Stage.ACTIVITY_RESULT);
+      }
+
+      ScanSession session = _Session;
+      _Session = null;
+      if (session != null) {
+        session.end();
+
+        if (session.isContinuous()) {
+          // Results were already streamed; release the kept-alive callback
+          // after any still queued, which see the ended session and drop out.
+          CallbackContext callbackContext = _CallbackContext;
+          PluginResult last = session.isStopRequested() ? new PluginResult(PluginResult.Status.NO_RESULT)
+              : new PluginResult(PluginResult.Status.ERROR, "USER_CANCELLED");
+          _ResultExecutor.execute(() -> callbackContext.sendPluginResult(last));
+          return;
+        }
+
+        if (session.isDelivered()) {
+          // The result already went to JS from the activity.
+          return;
+        }
+      }
+
+      // Results passed through the Intent, when the activity had no session
+      // because the app process was restarted meanwhile. SUCCESS and
+      // RESULT_CANCELED are both 0, so back, the close button or the system
+      // closing the activity also land here, without a barcode in the data.
       if (resultCode == CommonStatusCodes.SUCCESS) {
-        if (data != null) {
+        if (data == null || !data.hasExtra(CaptureActivity.BarcodeList) && !data.hasExtra(CaptureActivity.BarcodeValue)) {
+          _CallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "USER_CANCELLED"));
+        } else if (data.hasExtra(CaptureActivity.BarcodeList)) {
+          try {
+            sendBarcodeList(new JSONArray(data.getStringExtra(CaptureActivity.BarcodeList)));
+          } catch (JSONException e) {
+            _CallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, e.toString()));
+          }
+        } else {
           Integer barcodeFormat = data.getIntExtra(CaptureActivity.BarcodeFormat, 0);
           Integer barcodeType = data.getIntExtra(CaptureActivity.BarcodeType, 0);
           String barcodeValue = data.getStringExtra(CaptureActivity.BarcodeValue);
@@ -144,26 +827,23 @@ public class MLKitBarcodeScanner extends CordovaPlugin {
           result.put(barcodeValue);
           result.put(barcodeFormat);
           result.put(barcodeType);
-          _CallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
-
-          if (_BeepOnSuccess) {
-            _MediaPlayer.start();
-          }
-
-          if (_VibrateOnSuccess) {
-            Integer duration = 200;
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-              _Vibrator.vibrate(VibrationEffect.createOneShot(duration, VibrationEffect.DEFAULT_AMPLITUDE));
-            } else {
-              // deprecated in API 26 aka Oreo
-              _Vibrator.vibrate(duration);
-            }
+          putTimeline(result);
+          if (_ParseLicense && barcodeFormat == Barcode.FORMAT_PDF417) {
+            // Only the raw text survives the Intent, which the native parser handles alone.
+            putLicense(result, null, barcodeValue);
           }
+          _CallbackContext.sendPluginResult(
+              toPluginResult(result, data.getByteArrayExtra(CaptureActivity.BarcodeRawBytes), _RawBytes));
 
           Log.d("MLKitBarcodeScanner", "Barcode read: " + barcodeValue);
         }
       } else {
-        String err = data.getStringExtra("err");
+        String err = data != null ? data.getStringExtra("err") : null;
+        if (err == null) {
+          // Closed with back or the close button, or by the system, without data.
+          _CallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "USER_CANCELLED"));
+          return;
+        }
         JSONArray result = new JSONArray();
         result.put(err);
         result.put("");
@@ -0,0 +1,270 @@
+package com.readyop.cordova.plugins.barcode.scanner;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.SurfaceHolder;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Draws the reticle and the barcode bounding boxes on the overlay surface, on
+ * a thread of its own.
+ *
+ * <p>
+ * Other threads only publish the latest state and never touch the canvas:
+ * the reticle through an atomic reference, the boxes by copying them into an
+ * array under a lock that is held for that copy only. Publishing schedules at
+ * most one pending redraw, so bursts of updates are coalesced, and the render
+ * thread skips the redraw when nothing changed since the last frame it drew.
+ * Paints are created once, and the box coordinates are copied between two
+ * arrays that only grow, so publishing boxes does not allocate once the
+ * largest frame was seen.
+ *
+ * <p>
+ * The owner reports the surface lifecycle through {@link #attachSurface()} and
+ * {@link #detachSurface()}. Nothing is drawn while the surface is detached, and
+ * detaching waits for a frame being drawn to be posted.
+ */
+public class OverlayRenderer {
+
+  /** Reticle rectangle and the height of its guide line, in view coordinates. */
+  private static final class Reticle {
+    final RectF rect;
+    final float lineY;
+
+    Reticle(RectF rect, float lineY) {
+      this.rect = rect;
+      this.lineY = lineY;
+    }
+  }
+
+  private final SurfaceHolder holder;
+  private final HandlerThread thread = new HandlerThread("ReadyOpOverlay");
+  private final Handler handler;
+
+  private final AtomicReference<Reticle> reticle = new AtomicReference<>();
+  private final AtomicBoolean redrawPending = new AtomicBoolean();
+  private final Runnable renderTask = this::render;
+
+  private final Paint reticlePaint = new Paint();
+  private final Paint linePaint = new Paint();
+  private final Paint boxPaint = new Paint();
+
+  // Latest boxes, guarded by their own lock; the render thread copies them out.
+  private final Object boxLock = new Object();
+  private float[] pendingBoxes = new float[16];
+  private int pendingCount;
+
+  // Only touched on the render thread.
+  private Reticle drawnReticle;
+  private float[] drawnBoxes = new float[16];
+  private int drawnCount;
+  private boolean boxesDirty;
+  private final RectF boxRect = new RectF();
+
+  // Guards the canvas against the surface going away mid frame.
+  private final Object surfaceLock = new Object();
+  private boolean surfaceAttached;
+
+  private volatile boolean released;
+
+  private volatile long redraws;
+  private volatile long skippedRedraws;
+
+  public OverlayRenderer(SurfaceHolder holder) {
+    this.holder = holder;
+
+    reticlePaint.setStyle(Paint.Style.STROKE);
+    reticlePaint.setColor(Color.WHITE);
+    reticlePaint.setStrokeWidth(5);
+
+    linePaint.setARGB((int) (255 * 0.40), 255, 0, 0);
+    linePaint.setStyle(Paint.Style.FILL);
+    linePaint.setStrokeWidth(5);
+
+    boxPaint.setStyle(Paint.Style.STROKE);
+    boxPaint.setColor(Color.YELLOW);
+    boxPaint.setStrokeWidth(5.0f);
+    boxPaint.setAlpha(200);
+
+    thread.start();
+    handler = new Handler(thread.getLooper());
+  }
+
+  /** Sets the reticle, from the main thread. */
+  public void setReticle(RectF rect, float lineY) {
+    if (released) {
+      return;
+    }
+    reticle.set(new Reticle(new RectF(rect), lineY));
+    requestRender();
+  }
+
+  /**
+   * Publishes the bounding boxes of the latest frame, as left, top, right and
+   * bottom view coordinates per box, in the first {@code count} entries of
+   * {@code coordinates}. They are copied, so the caller can reuse the array.
+   */
+  public void setBoxes(float[] coordinates, int count) {
+    if (released) {
+      return;
+    }
+    synchronized (boxLock) {
+      if (pendingBoxes.length < count) {
+        pendingBoxes = new float[count];
+      }
+      System.arraycopy(coordinates, 0, pendingBoxes, 0, count);
+      pendingCount = count;
+    }
+    requestRender();
+  }
+
+  /** Removes the bounding boxes. Cheap when there are none already. */
+  public void clearBoxes() {
+    if (released) {
+      return;
+    }
+    synchronized (boxLock) {
+      if (pendingCount == 0) {
+        return;
+      }
+      pendingCount = 0;
+    }
+    requestRender();
+  }
+
+  /** Lets the render thread draw on the surface, once it was created. */
+  public void attachSurface() {
+    synchronized (surfaceLock) {
+      surfaceAttached = true;
+    }
+    invalidate();
+  }
+
+  /**
+   * Stops drawing on the surface, from the main thread when it is destroyed.
+   * Returns once a frame being drawn was posted, so the canvas is no longer
+   * used when the surface goes away.
+   */
+  public void detachSurface() {
+    synchronized (surfaceLock) {
+      surfaceAttached = false;
+    }
+  }
+
+  /** Redraws everything, for instance once the surface was resized. */
+  public void invalidate() {
+    if (released) {
+      return;
+    }
+    handler.post(() -> {
+      drawnReticle = null;
+    });
+    requestRender();
+  }
+
+  /**
+   * Stops the render thread. Later calls are ignored, so an analyzer frame
+   * still in flight cannot post to the stopped thread.
+   */
+  public void release() {
+    released = true;
+    handler.removeCallbacksAndMessages(null);
+    thread.quitSafely();
+  }
+
+  public long getRedraws() {
+    return redraws;
+  }
+
+  /** Number of scheduled redraws dropped because nothing had changed. */
+  public long getSkippedRedraws() {
+    return skippedRedraws;
+  }
+
+  private void requestRender() {
+    if (!released && redrawPending.compareAndSet(false, true)) {
+      handler.post(renderTask);
+    }
+  }
+
+  private void render() {
+    redrawPending.set(false);
+
+    copyPendingBoxes();
+    Reticle reticle = this.reticle.get();
+    if (reticle == null) {
+      return;
+    }
+    if (reticle == drawnReticle && !boxesDirty) {
+      skippedRedraws++;
+      return;
+    }
+
+    if (draw(reticle, drawnBoxes, drawnCount)) {
+      drawnReticle = reticle;
+      boxesDirty = false;
+      redraws++;
+    }
+  }
+
+  /** Takes the published boxes into {@link #drawnBoxes}, noting whether they changed. */
+  private void copyPendingBoxes() {
+    synchronized (boxLock) {
+      if (pendingCount == drawnCount && equalPrefix(pendingBoxes, drawnBoxes, pendingCount)) {
+        return;
+      }
+      if (drawnBoxes.length < pendingCount) {
+        drawnBoxes = new float[pendingBoxes.length];
+      }
+      System.arraycopy(pendingBoxes, 0, drawnBoxes, 0, pendingCount);
+      drawnCount = pendingCount;
+    }
+    boxesDirty = true;
+  }
+
+  private static boolean equalPrefix(float[] a, float[] b, int count) {
+    for (int i = 0; i < count; i++) {
+      if (Float.compare(a[i], b[i]) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns false when the surface is not available. */
+  private boolean draw(Reticle reticle, float[] boxes, int count) {
+    synchronized (surfaceLock) {
+      return surfaceAttached && drawOnSurface(reticle, boxes, count);
+    }
+  }
+
+  private boolean drawOnSurface(Reticle reticle, float[] boxes, int count) {
+    Canvas canvas = holder.lockCanvas();
+    if (canvas == null) {
+      return false;
+    }
+
+    canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+
+    for (int i = 0; i + 3 < count; i += 4) {
+      boxRect.set(boxes[i], boxes[i + 1], boxes[i + 2], boxes[i + 3]);
+      canvas.drawRect(boxRect, boxPaint);
+    }
+
+    RectF rect = reticle.rect;
+    canvas.drawRoundRect(rect, 50, 50, reticlePaint);
+
+    // Draw the reticle line
+    canvas.drawLine(rect.left + 5, reticle.lineY - 2.5f, rect.right - 10, reticle.lineY + 2.5f, linePaint);
+
+    holder.unlockCanvasAndPost(canvas);
+    return true;
+  }
+}
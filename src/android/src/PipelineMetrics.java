@@ -0,0 +1,202 @@
+package com.readyop.cordova.plugins.barcode.scanner;
+
+import com.readyop.cordova.plugins.barcode.scanner.utils.BitmapUtils;
+import com.readyop.cordova.plugins.barcode.scanner.utils.ByteArrayPool;
+import com.readyop.cordova.plugins.barcode.scanner.utils.LatencyHistogram;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Steady state numbers of the analysis loop, kept across scans.
+ *
+ * <p>
+ * The analyzer updates it for every frame with atomic counters and
+ * {@link LatencyHistogram}s only, so recording takes no lock and allocates
+ * nothing. {@link #toJson()} takes a snapshot on demand for the plugin.
+ */
+public class PipelineMetrics {
+
+  /** Frames with this many barcodes or more share the last bucket. */
+  private static final int MAX_DETECTIONS_BUCKET = 8;
+
+  private final LatencyHistogram conversion = new LatencyHistogram();
+  private final LatencyHistogram detector = new LatencyHistogram();
+  private final LatencyHistogram frameLatency = new LatencyHistogram();
+  private final LatencyHistogram narrowedDetector = new LatencyHistogram();
+  private final LatencyHistogram fullDetector = new LatencyHistogram();
+  private final LatencyHistogram consensusDelay = new LatencyHistogram();
+  private final LatencyHistogram feedbackDelay = new LatencyHistogram();
+
+  private final AtomicLong framesAnalyzed = new AtomicLong();
+  private final AtomicLong framesDropped = new AtomicLong();
+  private final AtomicLong framesSkipped = new AtomicLong();
+  private final AtomicLong emptyFrames = new AtomicLong();
+  private final AtomicLong detections = new AtomicLong();
+  private final AtomicLongArray detectionsPerFrame = new AtomicLongArray(MAX_DETECTIONS_BUCKET + 1);
+  private final AtomicLong formatProbes = new AtomicLong();
+  private final AtomicLong formatWidenings = new AtomicLong();
+  private final AtomicLong checkDigitRejects = new AtomicLong();
+  private final AtomicLong consensusPending = new AtomicLong();
+
+  /**
+   * Time to copy a frame region into the detector's input format. Full frames
+   * are passed on without a copy and are not recorded.
+   */
+  public void recordConversion(long nanos) {
+    conversion.recordNanos(nanos);
+  }
+
+  /** Time the detector took on a frame. */
+  public void recordDetector(long nanos) {
+    detector.recordNanos(nanos);
+  }
+
+  /** Time from a frame reaching the analyzer to its results being handled. */
+  public void recordFrameLatency(long nanos) {
+    frameLatency.recordNanos(nanos);
+  }
+
+  /**
+   * Detector time of a frame with adaptive formats, by the narrowed or the
+   * full detector.
+   */
+  public void recordFormatDetector(boolean narrowed, long nanos) {
+    (narrowed ? narrowedDetector : fullDetector).recordNanos(nanos);
+  }
+
+  /** Adaptive formats sent a frame to the full detector to look for other formats. */
+  public void formatProbe() {
+    formatProbes.incrementAndGet();
+  }
+
+  /** Adaptive formats went back to the full detector after too many empty frames. */
+  public void formatsWidened() {
+    formatWidenings.incrementAndGet();
+  }
+
+  /** A read was dropped for a wrong check digit or structure. */
+  public void checkDigitRejected() {
+    checkDigitRejects.incrementAndGet();
+  }
+
+  /** A read was held back because too few recent frames agree on it yet. */
+  public void consensusPending() {
+    consensusPending.incrementAndGet();
+  }
+
+  /** Time from the first frame with a value to its acceptance by consensus. */
+  public void recordConsensusDelay(long nanos) {
+    consensusDelay.recordNanos(nanos);
+  }
+
+  /** Time from detecting a barcode to starting its success beep. */
+  public void recordFeedbackDelay(long nanos) {
+    feedbackDelay.recordNanos(nanos);
+  }
+
+  /** A frame was closed without any work, by the throttle or for lack of a transform. */
+  public void frameDropped() {
+    framesDropped.incrementAndGet();
+  }
+
+  /** A frame was rejected before the detector, by the prefilter or an empty region. */
+  public void frameSkipped() {
+    framesSkipped.incrementAndGet();
+  }
+
+  /** A frame went through the detector, which found {@code count} barcodes. */
+  public void frameDetected(int count) {
+    framesAnalyzed.incrementAndGet();
+    detections.addAndGet(count);
+    detectionsPerFrame.incrementAndGet(Math.min(count, MAX_DETECTIONS_BUCKET));
+    if (count == 0) {
+      emptyFrames.incrementAndGet();
+    }
+  }
+
+  public void reset() {
+    conversion.reset();
+    detector.reset();
+    frameLatency.reset();
+    narrowedDetector.reset();
+    fullDetector.reset();
+    formatProbes.set(0);
+    formatWidenings.set(0);
+    consensusDelay.reset();
+    checkDigitRejects.set(0);
+    consensusPending.set(0);
+    feedbackDelay.reset();
+    framesAnalyzed.set(0);
+    framesDropped.set(0);
+    framesSkipped.set(0);
+    emptyFrames.set(0);
+    detections.set(0);
+    for (int i = 0; i <= MAX_DETECTIONS_BUCKET; i++) {
+      detectionsPerFrame.set(i, 0);
+    }
+  }
+
+  /**
+   * Returns the counters, the histogram summaries in milliseconds, the
+   * adaptive formats and validation numbers, the feedback delay and the NV21
+   * buffer pool statistics.
+   */
+  public JSONObject toJson() throws JSONException {
+    JSONObject json = new JSONObject();
+    json.put("framesAnalyzed", framesAnalyzed.get());
+    json.put("framesDropped", framesDropped.get());
+    json.put("framesSkipped", framesSkipped.get());
+    json.put("emptyFrames", emptyFrames.get());
+    json.put("detections", detections.get());
+
+    JSONArray perFrame = new JSONArray();
+    for (int i = 0; i <= MAX_DETECTIONS_BUCKET; i++) {
+      perFrame.put(detectionsPerFrame.get(i));
+    }
+    json.put("detectionsPerFrame", perFrame);
+
+    json.put("conversionMs", toJson(conversion));
+    json.put("detectorMs", toJson(detector));
+    json.put("frameLatencyMs", toJson(frameLatency));
+
+    JSONObject adaptive = new JSONObject();
+    adaptive.put("narrowedDetectorMs", toJson(narrowedDetector));
+    adaptive.put("fullDetectorMs", toJson(fullDetector));
+    adaptive.put("probes", formatProbes.get());
+    adaptive.put("widenings", formatWidenings.get());
+    json.put("adaptiveFormats", adaptive);
+
+    JSONObject validation = new JSONObject();
+    validation.put("checkDigitRejects", checkDigitRejects.get());
+    validation.put("consensusPending", consensusPending.get());
+    validation.put("consensusDelayMs", toJson(consensusDelay));
+    json.put("validation", validation);
+
+    json.put("feedbackDelayMs", toJson(feedbackDelay));
+
+    ByteArrayPool pool = BitmapUtils.getNv21Pool();
+    JSONObject poolJson = new JSONObject();
+    poolJson.put("hits", pool.getHits());
+    poolJson.put("misses", pool.getMisses());
+    poolJson.put("bytesAllocated", pool.getBytesAllocated());
+    poolJson.put("dropped", pool.getDropped());
+    json.put("nv21Pool", poolJson);
+    return json;
+  }
+
+  private static JSONObject toJson(LatencyHistogram histogram) throws JSONException {
+    JSONObject json = new JSONObject();
+    json.put("count", histogram.getCount());
+    json.put("mean", histogram.getMeanMs());
+    json.put("p50", histogram.getQuantileMs(0.5));
+    json.put("p90", histogram.getQuantileMs(0.9));
+    json.put("p99", histogram.getQuantileMs(0.99));
+    json.put("max", histogram.getMaxMs());
+    return json;
+  }
+}
@@ -0,0 +1,82 @@
+package com.readyop.cordova.plugins.barcode.scanner;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.readyop.cordova.plugins.barcode.scanner.utils.ResultChecks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Vets the barcodes of every analyzed frame before they are accepted, against
+ * codes outside the lookup set, misreads of worn labels and repeats.
+ *
+ * <p>
+ * The checks themselves are {@link ResultChecks}, which frame replays share;
+ * this class feeds it ML Kit barcodes on the analyzer thread and counts what
+ * it holds back in {@link PipelineMetrics}, along with the time consensus
+ * adds, from the first frame of the window with a value to its acceptance.
+ */
+public class ResultValidator {
+
+  private final ResultChecks checks;
+  @Nullable
+  private final PipelineMetrics metrics;
+
+  public ResultValidator(@NonNull ResultChecks checks, @Nullable PipelineMetrics metrics) {
+    this.checks = checks;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Returns the barcodes of a frame that pass every check but the duplicate
+   * one. Must be called on the analyzer thread for every analyzed frame,
+   * including those without barcodes, which count as frames for the
+   * consensus. Returns {@code barcodes} itself when all of them pass.
+   */
+  public List<Barcode> accept(@NonNull List<Barcode> barcodes) {
+    checks.nextFrame(System.nanoTime());
+
+    List<Barcode> accepted = null;
+    for (int i = 0; i < barcodes.size(); i++) {
+      Barcode barcode = barcodes.get(i);
+      boolean passes = barcode != null && validate(barcode);
+      if (!passes && accepted == null) {
+        accepted = new ArrayList<>(barcodes.subList(0, i));
+      } else if (passes && accepted != null) {
+        accepted.add(barcode);
+      }
+    }
+    return accepted != null ? accepted : barcodes;
+  }
+
+  /** Whether a barcode accepted in the current frame was not reported within the duplicate window. */
+  public boolean isNew(@NonNull Barcode barcode, @NonNull String value) {
+    return checks.isNew(barcode.getFormat(), value, barcode.getRawBytes());
+  }
+
+  private boolean validate(Barcode barcode) {
+    ResultChecks.Verdict verdict = checks.validate(barcode.getFormat(), CaptureActivity.getBarcodeValue(barcode));
+    if (metrics != null) {
+      switch (verdict) {
+        case BAD_CHECK_DIGIT:
+          metrics.checkDigitRejected();
+          break;
+        case CONSENSUS_PENDING:
+          metrics.consensusPending();
+          break;
+        case ACCEPTED:
+          long delay = checks.getConsensusDelayNanos();
+          if (delay >= 0) {
+            metrics.recordConsensusDelay(delay);
+          }
+          break;
+        default:
+          break;
+      }
+    }
+    return verdict == ResultChecks.Verdict.ACCEPTED;
+  }
+}
@@ -0,0 +1,158 @@
+package com.readyop.cordova.plugins.barcode.scanner;
+
+import android.app.Activity;
+
+import androidx.annotation.Nullable;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import org.json.JSONArray;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Links a running {@link CaptureActivity} to the plugin call that started it,
+ * identified by the request ID the activity is started with.
+ *
+ * <p>
+ * Only one session can be active at a time. The activity hands results to the
+ * session as soon as they are decoded, and the session passes them straight to
+ * the plugin, without waiting for the activity to finish. In continuous mode
+ * the camera keeps running and every accepted barcode is passed on. The
+ * activity result stays as a fallback for when the session is gone, after the
+ * app process was restarted.
+ */
+public class ScanSession {
+
+  /** Receives results on the analyzer thread. */
+  public interface Callback {
+    /** A barcode, the only one of a one-shot scan or one of many of a continuous scan. */
+    void onBarcode(ScanSession session, Barcode barcode);
+
+    /** The barcodes of a multi-code scan. */
+    void onBarcodeList(ScanSession session, JSONArray barcodes);
+  }
+
+  private static ScanSession active;
+
+  private final String requestId;
+  private final boolean continuous;
+  private final ScanTimeline timeline;
+  private final Callback callback;
+
+  private volatile WeakReference<Activity> activity = new WeakReference<>(null);
+  private volatile boolean stopRequested;
+  private volatile boolean ended;
+  private final AtomicBoolean delivered = new AtomicBoolean();
+
+  private ScanSession(String requestId, boolean continuous, ScanTimeline timeline, Callback callback) {
+    this.requestId = requestId;
+    this.continuous = continuous;
+    this.timeline = timeline;
+    this.callback = callback;
+  }
+
+  /** Starts a new session, or returns null when another one is still running. */
+  @Nullable
+  public static synchronized ScanSession begin(String requestId, boolean continuous, ScanTimeline timeline,
+      Callback callback) {
+    if (active != null) {
+      return null;
+    }
+    active = new ScanSession(requestId, continuous, timeline, callback);
+    return active;
+  }
+
+  @Nullable
+  public static synchronized ScanSession getActive() {
+    return active;
+  }
+
+  /** Returns the active session if it belongs to the request, otherwise null. */
+  @Nullable
+  public static synchronized ScanSession get(@Nullable String requestId) {
+    return active != null && active.requestId.equals(requestId) ? active : null;
+  }
+
+  public String getRequestId() {
+    return requestId;
+  }
+
+  /** Ends the session, once its activity has returned its result. */
+  public void end() {
+    ended = true;
+    synchronized (ScanSession.class) {
+      if (active == this) {
+        active = null;
+      }
+    }
+    activity.clear();
+  }
+
+  /** Whether {@link #end()} was called. */
+  public boolean isEnded() {
+    return ended;
+  }
+
+  public boolean isContinuous() {
+    return continuous;
+  }
+
+  public ScanTimeline getTimeline() {
+    return timeline;
+  }
+
+  /** Whether the session was ended with {@link #stop()} rather than by the user. */
+  public boolean isStopRequested() {
+    return stopRequested;
+  }
+
+  /** Called by the activity once it is created, and again if it is recreated. */
+  public void attach(Activity activity) {
+    this.activity = new WeakReference<>(activity);
+    if (stopRequested) {
+      activity.runOnUiThread(activity::finish);
+    }
+  }
+
+  /** Passes on a barcode of a continuous session. */
+  public void deliver(Barcode barcode) {
+    callback.onBarcode(this, barcode);
+  }
+
+  /**
+   * Passes on the result of a one-shot scan. Only the first call delivers;
+   * later ones, from frames analyzed while the activity closes, return false.
+   */
+  public boolean deliverResult(Barcode barcode) {
+    if (!delivered.compareAndSet(false, true)) {
+      return false;
+    }
+    callback.onBarcode(this, barcode);
+    return true;
+  }
+
+  /** Same as {@link #deliverResult(Barcode)}, for a multi-code scan. */
+  public boolean deliverResult(JSONArray barcodes) {
+    if (!delivered.compareAndSet(false, true)) {
+      return false;
+    }
+    callback.onBarcodeList(this, barcodes);
+    return true;
+  }
+
+  /** Whether a one-shot result was already passed on. */
+  public boolean isDelivered() {
+    return delivered.get();
+  }
+
+  /** Closes the scanner; the plugin is told through the activity result. */
+  public void stop() {
+    stopRequested = true;
+    Activity current = activity.get();
+    if (current != null) {
+      current.runOnUiThread(current::finish);
+    }
+  }
+}
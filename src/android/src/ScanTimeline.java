@@ -0,0 +1,68 @@
+package com.readyop.cordova.plugins.barcode.scanner;
+
+import android.os.SystemClock;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Monotonic timestamps of the stages a scan goes through, from the JS call to
+ * the result callback.
+ *
+ * <p>
+ * Each stage keeps the time it was first reached, so stages hit on every frame
+ * only cost a read once they are set. Stages may be marked from any thread.
+ */
+public class ScanTimeline {
+
+  /** The stages of a scan, in the order they normally happen. */
+  public enum Stage {
+    START("startScan"),
+    ACTIVITY_CREATED("activityCreated"),
+    PERMISSION_GRANTED("permissionGranted"),
+    PREVIEW_BOUND("previewBound"),
+    FIRST_FRAME("firstFrame"),
+    FIRST_DETECTION("firstDetection"),
+    ACTIVITY_RESULT("activityResult"),
+    CALLBACK("callback");
+
+    final String key;
+
+    Stage(String key) {
+      this.key = key;
+    }
+  }
+
+  private final AtomicLongArray marks = new AtomicLongArray(Stage.values().length);
+
+  /** @param startNanos {@link SystemClock#elapsedRealtimeNanos()} when the scan was requested */
+  public ScanTimeline(long startNanos) {
+    marks.set(Stage.START.ordinal(), startNanos);
+  }
+
+  /** Records the current time for the stage, unless it was already reached. */
+  public void mark(Stage stage) {
+    int index = stage.ordinal();
+    if (marks.get(index) == 0) {
+      marks.compareAndSet(index, 0, SystemClock.elapsedRealtimeNanos());
+    }
+  }
+
+  /**
+   * Returns the reached stages as milliseconds since the scan was requested,
+   * keyed by stage name.
+   */
+  public JSONObject toJson() throws JSONException {
+    JSONObject json = new JSONObject();
+    long start = marks.get(Stage.START.ordinal());
+    for (Stage stage : Stage.values()) {
+      long mark = marks.get(stage.ordinal());
+      if (mark != 0) {
+        json.put(stage.key, Math.round((mark - start) / 1000.0) / 1000.0);
+      }
+    }
+    return json;
+  }
+}
@@ -0,0 +1,356 @@
+package com.readyop.cordova.plugins.barcode.scanner;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
+import com.google.mlkit.vision.barcode.BarcodeScanning;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.mlkit.vision.common.InputImage;
+import com.readyop.cordova.plugins.barcode.scanner.utils.LookupIndex;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scanner state shared by every scan for as long as the plugin is loaded.
+ *
+ * <p>
+ * Holds the worker pool the plugin threads come from, a separate bounded pool
+ * for batch image scans, the ML Kit scanner clients, cached per format set, the CameraX provider, the lookup
+ * set barcodes can be checked against and the success feedback. The first
+ * three are expensive to create, so {@link #prepare(int, Runnable)} can
+ * create them ahead of the first scan. {@link #shutdown()} releases
+ * everything when the plugin is destroyed.
+ */
+public final class ScannerResources {
+  private static final String TAG = "ScannerResources";
+
+  /** Size of the blank frame run through a new scanner to load its model. */
+  private static final int WARM_UP_SIZE = 32;
+
+  /** Linear (1D) formats, the first detector shard. */
+  public static final int LINEAR_FORMATS = Barcode.FORMAT_CODE_128 | Barcode.FORMAT_CODE_39 | Barcode.FORMAT_CODE_93
+      | Barcode.FORMAT_CODABAR | Barcode.FORMAT_EAN_13 | Barcode.FORMAT_EAN_8 | Barcode.FORMAT_ITF
+      | Barcode.FORMAT_UPC_A | Barcode.FORMAT_UPC_E;
+  /** Matrix (2D) formats, the second detector shard. */
+  public static final int MATRIX_FORMATS = Barcode.FORMAT_QR_CODE | Barcode.FORMAT_DATA_MATRIX | Barcode.FORMAT_AZTEC;
+  /** PDF417 is stacked rather than matrix, and the slowest to search for, so it gets a shard of its own. */
+  public static final int STACKED_FORMATS = Barcode.FORMAT_PDF417;
+
+  private static final int[] FORMAT_FAMILIES = { LINEAR_FORMATS, MATRIX_FORMATS, STACKED_FORMATS };
+
+  private static ScannerResources instance;
+
+  private final Context context;
+  private final ThreadPoolExecutor pool;
+  private final ThreadPoolExecutor batchPool;
+  private final int threads;
+  private final Map<Integer, BarcodeScanner> scanners = new HashMap<>();
+  private final Map<Integer, BarcodeScanner> shardScanners = new HashMap<>();
+  private final Set<BarcodeScanner> warmedUp = new HashSet<>();
+  private final PipelineMetrics metrics = new PipelineMetrics();
+  private final FeedbackEngine feedback;
+  private ListenableFuture<ProcessCameraProvider> cameraProvider;
+  @Nullable
+  private volatile LookupIndex lookupIndex;
+
+  private ScannerResources(Context context) {
+    this.context = context.getApplicationContext();
+
+    threads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    pool = newPool(threads, "ReadyOpScanner-");
+    // Batch workers wait on their memory budget, so they get threads of their
+    // own, one fewer than the worker pool for all batches together.
+    batchPool = newPool(threads - 1, "ReadyOpBatch-");
+    feedback = new FeedbackEngine(this.context, pool, metrics);
+  }
+
+  private static ThreadPoolExecutor newPool(int size, String name) {
+    AtomicInteger count = new AtomicInteger();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+        runnable -> {
+          Thread thread = new Thread(runnable, name + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /** Returns the shared resources, creating them on first use. */
+  public static synchronized ScannerResources get(Context context) {
+    if (instance == null) {
+      instance = new ScannerResources(context);
+    }
+    return instance;
+  }
+
+  /** Closes the cached scanners, frees the feedback sound and stops the worker pools. */
+  public static synchronized void shutdown() {
+    if (instance == null) {
+      return;
+    }
+    synchronized (instance) {
+      for (BarcodeScanner scanner : instance.scanners.values()) {
+        scanner.close();
+      }
+      instance.scanners.clear();
+      for (BarcodeScanner scanner : instance.shardScanners.values()) {
+        scanner.close();
+      }
+      instance.shardScanners.clear();
+      instance.warmedUp.clear();
+    }
+    instance.feedback.release();
+    instance.pool.shutdown();
+    instance.batchPool.shutdown();
+    instance = null;
+  }
+
+  /** Maps the format mask sent from JS to the formats the detector is built with. */
+  public static int resolveFormats(int formats) {
+    if (formats == 0 || formats == 1234) {
+      return Barcode.FORMAT_CODE_39 | Barcode.FORMAT_DATA_MATRIX;
+    }
+    return formats;
+  }
+
+  /**
+   * Splits a resolved format mask by format family, linear, matrix and PDF417,
+   * leaving out the families with no format enabled. The families cover every
+   * format ML Kit knows.
+   */
+  public static int[] splitFormats(int formats) {
+    int[] families = new int[FORMAT_FAMILIES.length];
+    int count = 0;
+    for (int family : FORMAT_FAMILIES) {
+      if ((formats & family) != 0) {
+        families[count++] = formats & family;
+      }
+    }
+    int[] result = new int[count];
+    System.arraycopy(families, 0, result, 0, count);
+    return result;
+  }
+
+  /** The shared worker pool, for short one-off tasks. */
+  public Executor getExecutor() {
+    return pool;
+  }
+
+  /** Number of threads of the worker pool, one per core within limits. */
+  public int getThreadCount() {
+    return threads;
+  }
+
+  /**
+   * The pool still image scans, single images as well as batches, and lookup
+   * set loads run on. Its threads may block for a long time, and there are
+   * fewer of them than worker pool threads, so concurrent scans queue behind
+   * each other instead of starving live scanning.
+   */
+  public Executor getBatchExecutor() {
+    return batchPool;
+  }
+
+  /** Number of threads of the batch pool, shared by every batch. */
+  public int getBatchThreadCount() {
+    return batchPool.getMaximumPoolSize();
+  }
+
+  /**
+   * Returns an executor that runs its tasks one at a time, in order, on the
+   * shared pool. Used where a dedicated thread would otherwise be needed, such
+   * as for image analysis.
+   */
+  public Executor newSerialExecutor() {
+    return new SerialExecutor(pool);
+  }
+
+  /** Analysis loop metrics, shared by every scan. */
+  public PipelineMetrics getMetrics() {
+    return metrics;
+  }
+
+  /** Success beep and vibration; call {@link FeedbackEngine#prepare()} before a scan that uses them. */
+  public FeedbackEngine getFeedback() {
+    return feedback;
+  }
+
+  /** The codes scans can be restricted to, loaded from JS, or null. */
+  @Nullable
+  public LookupIndex getLookupIndex() {
+    return lookupIndex;
+  }
+
+  /** Replaces the lookup set; pass null to drop it. */
+  public void setLookupIndex(@Nullable LookupIndex lookupIndex) {
+    this.lookupIndex = lookupIndex;
+  }
+
+  /** Returns the cached scanner client for a format mask, as resolved by {@link #resolveFormats(int)}. */
+  public synchronized BarcodeScanner getScanner(int formats) {
+    BarcodeScanner scanner = scanners.get(formats);
+    if (scanner == null) {
+      scanner = BarcodeScanning.getClient(new BarcodeScannerOptions.Builder().setBarcodeFormats(formats).build());
+      scanners.put(formats, scanner);
+    }
+    return scanner;
+  }
+
+  /**
+   * Returns one scanner client per format family of the mask, so the families
+   * can be searched for on the same frame at once. The shard clients run on
+   * the worker pool rather than ML Kit's own detector thread, which would run
+   * them one after the other. A mask within a single family gets the plain
+   * client of {@link #getScanner(int)}.
+   */
+  public synchronized List<BarcodeScanner> getShards(int formats) {
+    int[] families = splitFormats(formats);
+    if (families.length < 2) {
+      return Collections.singletonList(getScanner(formats));
+    }
+
+    List<BarcodeScanner> shards = new ArrayList<>(families.length);
+    for (int family : families) {
+      BarcodeScanner scanner = shardScanners.get(family);
+      if (scanner == null) {
+        scanner = BarcodeScanning.getClient(
+            new BarcodeScannerOptions.Builder().setBarcodeFormats(family).setExecutor(pool).build());
+        shardScanners.put(family, scanner);
+      }
+      shards.add(scanner);
+    }
+    return shards;
+  }
+
+  /** Whether the scanner for the format mask already ran, so its model is loaded. */
+  public synchronized boolean isWarm(int formats) {
+    return isWarm(formats, false);
+  }
+
+  /** Whether every client a scan of the format mask uses already ran, the shards when {@code shard} is set. */
+  public synchronized boolean isWarm(int formats, boolean shard) {
+    return warmedUp.containsAll(getClients(formats, shard));
+  }
+
+  private List<BarcodeScanner> getClients(int formats, boolean shard) {
+    return shard ? getShards(formats) : Collections.singletonList(getScanner(formats));
+  }
+
+  public synchronized ListenableFuture<ProcessCameraProvider> getCameraProvider() {
+    if (cameraProvider == null) {
+      cameraProvider = ProcessCameraProvider.getInstance(context);
+    }
+    return cameraProvider;
+  }
+
+  /**
+   * Creates the scanner for the format mask and starts CameraX, then runs the
+   * scanner once on a blank frame so its model is loaded before the first scan.
+   * {@code onReady} runs on the worker pool once that is done.
+   */
+  public void prepare(int formats, @NonNull Runnable onReady) {
+    prepare(formats, false, onReady);
+  }
+
+  /**
+   * Like {@link #prepare(int, Runnable)}, but warms the format family shards
+   * of {@link #getShards(int)} instead when {@code shard} is set, each on a
+   * blank frame of its own.
+   */
+  public void prepare(int formats, boolean shard, @NonNull Runnable onReady) {
+    getCameraProvider();
+
+    List<BarcodeScanner> cold = new ArrayList<>();
+    synchronized (this) {
+      for (BarcodeScanner scanner : getClients(formats, shard)) {
+        if (!warmedUp.contains(scanner)) {
+          cold.add(scanner);
+        }
+      }
+    }
+    if (cold.isEmpty()) {
+      pool.execute(onReady);
+      return;
+    }
+
+    long start = System.nanoTime();
+    AtomicInteger remaining = new AtomicInteger(cold.size());
+    for (BarcodeScanner scanner : cold) {
+      byte[] blank = new byte[WARM_UP_SIZE * WARM_UP_SIZE * 3 / 2];
+      InputImage input = InputImage.fromByteArray(blank, WARM_UP_SIZE, WARM_UP_SIZE, 0, InputImage.IMAGE_FORMAT_NV21);
+      scanner.process(input).addOnCompleteListener(pool, task -> {
+        synchronized (this) {
+          warmedUp.add(scanner);
+        }
+        if (remaining.decrementAndGet() == 0) {
+          Log.d(TAG, (shard ? "Shards" : "Scanner") + " for formats " + formats + " warmed up in "
+              + (System.nanoTime() - start) / 1000000 + " ms");
+          onReady.run();
+        }
+      });
+    }
+  }
+
+  /**
+   * Runs tasks one after the other on a backing executor. Once the backing
+   * pool is shut down, queued and new tasks are dropped: they belong to
+   * sessions that ended with the plugin.
+   */
+  private static final class SerialExecutor implements Executor {
+    private final Executor backing;
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private Runnable active;
+
+    SerialExecutor(Executor backing) {
+      this.backing = backing;
+    }
+
+    @Override
+    public synchronized void execute(@NonNull Runnable task) {
+      tasks.add(() -> {
+        try {
+          task.run();
+        } finally {
+          scheduleNext();
+        }
+      });
+      if (active == null) {
+        scheduleNext();
+      }
+    }
+
+    private synchronized void scheduleNext() {
+      active = tasks.poll();
+      if (active != null) {
+        try {
+          backing.execute(active);
+        } catch (RejectedExecutionException e) {
+          Log.d(TAG, "Dropped " + (tasks.size() + 1) + " tasks after shutdown");
+          tasks.clear();
+          active = null;
+        }
+      }
+    }
+  }
+}
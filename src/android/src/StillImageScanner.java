@@ -0,0 +1,139 @@
+package com.readyop.cordova.plugins.barcode.scanner;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.barcode.common.Barcode;
+import com.google.mlkit.vision.common.InputImage;
+import com.readyop.cordova.plugins.barcode.scanner.utils.BitmapUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Finds barcodes in a still image, such as a photo picked from the gallery.
+ *
+ * <p>
+ * The image is never decoded at full size at once. Its bounds are read first,
+ * and a first pass runs on a copy downsampled to about one megapixel. If
+ * nothing is found there, the image is searched again at twice the
+ * resolution, cut into overlapping tiles of the same size with a region
+ * decoder, until the full resolution is reached. At most one tile is held in
+ * memory at a time.
+ */
+public class StillImageScanner {
+
+  /** Pixel budget of the first pass and of every tile. */
+  private static final int TILE_PIXELS = 1024 * 1024;
+  private static final int TILE_SIDE = 1024;
+  /** Tiles overlap by this share of their side, so codes on a seam are whole in one of them. */
+  private static final int TILE_OVERLAP = TILE_SIDE / 8;
+
+  private final BarcodeScanner scanner;
+
+  public StillImageScanner(BarcodeScanner scanner) {
+    this.scanner = scanner;
+  }
+
+  /**
+   * Upper bound of the bitmap memory a scan of an image this size holds at
+   * once: one ARGB tile plus its upright copy.
+   */
+  public static long estimatePeakBytes(int width, int height) {
+    return Math.min((long) width * height, TILE_PIXELS) * 4 * 2;
+  }
+
+  /**
+   * Scans the image, blocking until done. Must not be called on the main
+   * thread. Returns an empty list when no barcode is found.
+   *
+   * @throws IOException when the image cannot be read or decoded
+   */
+  public List<Barcode> scan(BitmapUtils.ImageSource source)
+      throws IOException, ExecutionException, InterruptedException {
+    BitmapFactory.Options bounds = BitmapUtils.decodeBounds(source);
+    if (bounds == null) {
+      throw new IOException("Not an image");
+    }
+    int width = bounds.outWidth;
+    int height = bounds.outHeight;
+    int orientation = BitmapUtils.getExifOrientationTag(source);
+
+    int sampleSize = BitmapUtils.getSampleSize(width, height, TILE_PIXELS);
+    Bitmap bitmap = BitmapUtils.decodeSampled(source, sampleSize);
+    if (bitmap == null) {
+      throw new IOException("Could not decode the image");
+    }
+
+    List<Barcode> found = detect(bitmap, orientation);
+    while (found.isEmpty() && sampleSize > 1) {
+      sampleSize /= 2;
+      found = detectTiles(source, width, height, sampleSize, orientation);
+    }
+    return found;
+  }
+
+  /** Searches the image tile by tile at the given sample size. */
+  private List<Barcode> detectTiles(BitmapUtils.ImageSource source, int width, int height, int sampleSize,
+      int orientation) throws IOException, ExecutionException, InterruptedException {
+    BitmapRegionDecoder decoder;
+    try (InputStream stream = source.open()) {
+      decoder = BitmapRegionDecoder.newInstance(stream, false);
+    }
+    if (decoder == null) {
+      return Collections.emptyList();
+    }
+
+    // Barcodes seen in several overlapping tiles are reported once.
+    Map<String, Barcode> found = new LinkedHashMap<>();
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inSampleSize = sampleSize;
+    int tileSide = TILE_SIDE * sampleSize;
+    int step = (TILE_SIDE - TILE_OVERLAP) * sampleSize;
+    Rect region = new Rect();
+
+    try {
+      for (int top = 0; top < height; top += step) {
+        for (int left = 0; left < width; left += step) {
+          region.set(left, top, Math.min(width, left + tileSide), Math.min(height, top + tileSide));
+          Bitmap tile = decoder.decodeRegion(region, options);
+          if (tile != null) {
+            for (Barcode barcode : detect(tile, orientation)) {
+              found.put(barcode.getFormat() + ":" + CaptureActivity.getBarcodeValue(barcode), barcode);
+            }
+          }
+          if (left + tileSide >= width) {
+            break;
+          }
+        }
+        if (top + tileSide >= height) {
+          break;
+        }
+      }
+    } finally {
+      decoder.recycle();
+    }
+    return new ArrayList<>(found.values());
+  }
+
+  /** Runs the detector on an upright copy of the bitmap, and recycles both. */
+  private List<Barcode> detect(Bitmap bitmap, int orientation) throws ExecutionException, InterruptedException {
+    Bitmap upright = BitmapUtils.applyExifOrientation(bitmap, orientation);
+    try {
+      List<Barcode> barcodes = Tasks.await(scanner.process(InputImage.fromBitmap(upright, 0)));
+      return barcodes != null ? barcodes : Collections.emptyList();
+    } finally {
+      upright.recycle();
+    }
+  }
+}
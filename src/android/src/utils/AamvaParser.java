@@ -0,0 +1,238 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import androidx.annotation.Nullable;
+
+import com.google.mlkit.vision.barcode.common.Barcode;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the AAMVA data elements of a driver licence or ID card PDF417.
+ *
+ * <p>
+ * The text starts with a header naming the issuer (IIN), the AAMVA version and
+ * the subfiles, followed by the subfile data: the subfile type, {@code DL} or
+ * {@code ID}, then one element per line, each a three letter element ID and
+ * its value. ML Kit parses the same data, but leaves fields empty for some
+ * issuers and versions; {@link #toJson} fills those from this parser.
+ */
+public final class AamvaParser {
+
+  private static final Pattern HEADER = Pattern.compile("(?:ANSI|AAMVA) ?(\\d{6})(\\d{2})");
+  private static final Pattern SUBFILE = Pattern.compile("(DL|ID)(D[A-Z]{2})");
+
+  /** The parsed header and data elements of a licence. */
+  public static final class Result {
+    public final String issuerId;
+    public final int version;
+    public final String documentType;
+    /** Values by element ID, such as {@code DAQ} for the licence number, in document order. */
+    public final Map<String, String> elements;
+
+    Result(String issuerId, int version, String documentType, Map<String, String> elements) {
+      this.issuerId = issuerId;
+      this.version = version;
+      this.documentType = documentType;
+      this.elements = elements;
+    }
+
+    @Nullable
+    public String get(String elementId) {
+      String value = elements.get(elementId);
+      return value == null || value.isEmpty() ? null : value;
+    }
+  }
+
+  private AamvaParser() {
+  }
+
+  /** Parses the raw text of a licence PDF417, or returns null when it is not AAMVA data. */
+  @Nullable
+  public static Result parse(@Nullable String data) {
+    if (data == null) {
+      return null;
+    }
+    Matcher header = HEADER.matcher(data);
+    if (!header.find()) {
+      return null;
+    }
+    Matcher subfile = SUBFILE.matcher(data);
+    if (!subfile.find(header.end())) {
+      return null;
+    }
+
+    Map<String, String> elements = new LinkedHashMap<>();
+    // The first element follows the subfile type on the same line.
+    String[] lines = data.substring(subfile.start(2)).split("[\\n\\r\\u001e]+");
+    for (String line : lines) {
+      if (line.length() < 3 || line.charAt(0) != 'D') {
+        continue;
+      }
+      String id = line.substring(0, 3);
+      if (isElementId(id) && !elements.containsKey(id)) {
+        elements.put(id, line.substring(3).trim());
+      }
+    }
+
+    return new Result(header.group(1), Integer.parseInt(header.group(2)), subfile.group(1), elements);
+  }
+
+  /**
+   * Returns the licence fields, from ML Kit's parse where it has them and from
+   * the raw text otherwise, or null when neither has any. Dates are given as
+   * YYYY-MM-DD when they can be read, and the data elements of the raw text
+   * are included under {@code elements}.
+   */
+  @Nullable
+  public static JSONObject toJson(@Nullable Barcode.DriverLicense license, @Nullable String raw)
+      throws JSONException {
+    Result parsed = parse(raw);
+    if (license == null && parsed == null) {
+      return null;
+    }
+
+    String country = pick(license != null ? license.getIssuingCountry() : null, get(parsed, "DCG"));
+    boolean canadian = "CAN".equals(country);
+
+    String[] fullName = splitFullName(get(parsed, "DAA"));
+    String[] givenNames = splitGivenNames(get(parsed, "DCT"));
+
+    JSONObject json = new JSONObject();
+    json.put("documentType", pick(license != null ? license.getDocumentType() : null,
+        parsed != null ? parsed.documentType : null));
+    json.put("firstName", pick(license != null ? license.getFirstName() : null,
+        get(parsed, "DAC"), givenNames[0], fullName[1]));
+    json.put("middleName", pick(license != null ? license.getMiddleName() : null,
+        get(parsed, "DAD"), givenNames[1], fullName[2]));
+    json.put("lastName", pick(license != null ? license.getLastName() : null,
+        get(parsed, "DCS"), get(parsed, "DAB"), fullName[0]));
+    json.put("gender", normalizeGender(pick(license != null ? license.getGender() : null, get(parsed, "DBC"))));
+    json.put("birthDate", normalizeDate(pick(license != null ? license.getBirthDate() : null,
+        get(parsed, "DBB")), canadian));
+    json.put("issueDate", normalizeDate(pick(license != null ? license.getIssueDate() : null,
+        get(parsed, "DBD")), canadian));
+    json.put("expiryDate", normalizeDate(pick(license != null ? license.getExpiryDate() : null,
+        get(parsed, "DBA")), canadian));
+    json.put("licenseNumber", pick(license != null ? license.getLicenseNumber() : null, get(parsed, "DAQ")));
+    json.put("addressStreet", pick(license != null ? license.getAddressStreet() : null, get(parsed, "DAG")));
+    json.put("addressCity", pick(license != null ? license.getAddressCity() : null, get(parsed, "DAI")));
+    json.put("addressState", pick(license != null ? license.getAddressState() : null, get(parsed, "DAJ")));
+    json.put("addressZip", normalizeZip(pick(license != null ? license.getAddressZip() : null,
+        get(parsed, "DAK"))));
+    json.put("issuingCountry", country);
+
+    if (parsed != null) {
+      json.put("issuerId", parsed.issuerId);
+      json.put("aamvaVersion", parsed.version);
+      JSONObject elements = new JSONObject();
+      for (Map.Entry<String, String> element : parsed.elements.entrySet()) {
+        elements.put(element.getKey(), element.getValue());
+      }
+      json.put("elements", elements);
+    }
+    return json;
+  }
+
+  /**
+   * Converts an eight digit date to YYYY-MM-DD. US documents write dates as
+   * MMDDCCYY and Canadian ones as CCYYMMDD; the other order is tried when the
+   * expected one gives no valid date. Anything else is returned as is.
+   */
+  @Nullable
+  public static String normalizeDate(@Nullable String date, boolean canadian) {
+    if (date == null || date.length() != 8 || !date.matches("\\d{8}")) {
+      return date;
+    }
+    String us = date.substring(4, 8) + "-" + date.substring(0, 2) + "-" + date.substring(2, 4);
+    String iso = date.substring(0, 4) + "-" + date.substring(4, 6) + "-" + date.substring(6, 8);
+    String first = canadian ? iso : us;
+    String second = canadian ? us : iso;
+    if (isValidDate(first)) {
+      return first;
+    }
+    return isValidDate(second) ? second : date;
+  }
+
+  private static boolean isValidDate(String iso) {
+    int year = Integer.parseInt(iso.substring(0, 4));
+    int month = Integer.parseInt(iso.substring(5, 7));
+    int day = Integer.parseInt(iso.substring(8, 10));
+    return year >= 1900 && year <= 2199 && month >= 1 && month <= 12 && day >= 1 && day <= 31;
+  }
+
+  /** Sex is coded 1 for male, 2 for female and 9 for not specified. */
+  @Nullable
+  private static String normalizeGender(@Nullable String gender) {
+    if (gender == null) {
+      return null;
+    }
+    switch (gender.trim()) {
+      case "1":
+        return "M";
+      case "2":
+        return "F";
+      case "9":
+        return "X";
+      default:
+        return gender.trim();
+    }
+  }
+
+  /** Zip codes are padded to nine digits with zeros; drops the padding. */
+  @Nullable
+  private static String normalizeZip(@Nullable String zip) {
+    if (zip != null && zip.length() == 9 && zip.endsWith("0000")) {
+      return zip.substring(0, 5);
+    }
+    return zip;
+  }
+
+  /** Splits a version 1 full name, last, first and middle separated by commas. */
+  private static String[] splitFullName(@Nullable String name) {
+    String[] result = new String[3];
+    if (name != null) {
+      String[] parts = name.split(",", 3);
+      for (int i = 0; i < parts.length; i++) {
+        result[i] = parts[i].trim().isEmpty() ? null : parts[i].trim();
+      }
+    }
+    return result;
+  }
+
+  /** Splits version 2 and 3 given names, first and middle separated by a comma or a space. */
+  private static String[] splitGivenNames(@Nullable String names) {
+    String[] result = new String[2];
+    if (names != null) {
+      String[] parts = names.trim().split("[, ]", 2);
+      result[0] = parts[0].isEmpty() ? null : parts[0];
+      result[1] = parts.length > 1 && !parts[1].trim().isEmpty() ? parts[1].trim() : null;
+    }
+    return result;
+  }
+
+  @Nullable
+  private static String get(@Nullable Result parsed, String elementId) {
+    return parsed != null ? parsed.get(elementId) : null;
+  }
+
+  /** Returns the first value that is neither null nor blank. */
+  @Nullable
+  private static String pick(String... values) {
+    for (String value : values) {
+      if (value != null && !value.trim().isEmpty()) {
+        return value.trim();
+      }
+    }
+    return null;
+  }
+
+  private static boolean isElementId(String id) {
+    return id.charAt(0) == 'D' && Character.isUpperCase(id.charAt(1)) && Character.isUpperCase(id.charAt(2));
+  }
+}
@@ -20,15 +20,12 @@ import android.annotation.TargetApi;
 import android.content.ContentResolver;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
 import android.graphics.Matrix;
 import android.graphics.Rect;
-import android.graphics.YuvImage;
 import android.media.Image;
 import android.media.Image.Plane;
 import android.net.Uri;
 import android.os.Build.VERSION_CODES;
-import android.provider.MediaStore;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
@@ -37,30 +34,64 @@ import androidx.camera.core.ExperimentalGetImage;
 import androidx.camera.core.ImageProxy;
 import androidx.exifinterface.media.ExifInterface;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
 
 /** Utils functions for bitmap conversions. */
 public class BitmapUtils {
   private static final String TAG = "BitmapUtils";
 
+  /** Largest image, in pixels, {@link #getBitmapFromContentUri} decodes. */
+  public static final int MAX_DECODE_PIXELS = 2048 * 2048;
+
+  /**
+   * Scratch ARGB buffer, one per converting thread, so repeated conversions of
+   * same sized frames do not allocate.
+   */
+  private static final ThreadLocal<int[]> argbScratch = new ThreadLocal<>();
+
+  /**
+   * Pool backing {@link #getNv21(ImageProxy)}; a few slots cover the frames in
+   * flight. Only frames that are copied use it, region of interest crops and
+   * bitmap conversions: the analyzer hands full frames to ML Kit as the
+   * camera's own image, without a copy.
+   */
+  private static final ByteArrayPool nv21Pool = new ByteArrayPool(3);
+
+  private static volatile boolean parallelUnpack = false;
+
   /** Converts NV21 format byte buffer to bitmap. */
   @Nullable
   public static Bitmap getBitmap(ByteBuffer data, FrameMetadata metadata) {
-    data.rewind();
-    byte[] imageInBuffer = new byte[data.limit()];
-    data.get(imageInBuffer, 0, imageInBuffer.length);
-    try {
-      YuvImage image = new YuvImage(imageInBuffer, ImageFormat.NV21, metadata.getWidth(), metadata.getHeight(), null);
-      ByteArrayOutputStream stream = new ByteArrayOutputStream();
-      image.compressToJpeg(new Rect(0, 0, metadata.getWidth(), metadata.getHeight()), 80, stream);
+    return getBitmap(data, metadata, null);
+  }
 
-      Bitmap bmp = BitmapFactory.decodeByteArray(stream.toByteArray(), 0, stream.size());
+  /**
+   * Converts NV21 format byte buffer to bitmap, writing into {@code reuse} when
+   * it is mutable and already has the rotated frame size.
+   */
+  @Nullable
+  public static Bitmap getBitmap(ByteBuffer data, FrameMetadata metadata, @Nullable Bitmap reuse) {
+    int width = metadata.getWidth();
+    int height = metadata.getHeight();
+    int rotation = metadata.getRotation();
+
+    byte[] nv21;
+    if (data.hasArray() && data.arrayOffset() == 0) {
+      nv21 = data.array();
+    } else {
+      data.rewind();
+      nv21 = new byte[data.limit()];
+      data.get(nv21, 0, nv21.length);
+    }
 
-      stream.close();
-      return rotateBitmap(bmp, metadata.getRotation(), false, false);
+    try {
+      int[] argb = getArgbScratch(width, height);
+      YuvToRgbConverter.nv21ToArgb(nv21, width, height, rotation, argb);
+      return toBitmap(argb, width, height, rotation, reuse);
     } catch (Exception e) {
       Log.e("VisionProcessorBase", "Error: " + e.getMessage());
     }
@@ -72,11 +103,108 @@ public class BitmapUtils {
   @Nullable
   @ExperimentalGetImage
   public static Bitmap getBitmap(ImageProxy image) {
-    FrameMetadata frameMetadata = new FrameMetadata.Builder().setWidth(image.getWidth()).setHeight(image.getHeight())
-        .setRotation(image.getImageInfo().getRotationDegrees()).build();
+    return getBitmap(image, null);
+  }
 
-    ByteBuffer nv21Buffer = yuv420ThreePlanesToNV21(image.getImage().getPlanes(), image.getWidth(), image.getHeight());
-    return getBitmap(nv21Buffer, frameMetadata);
+  /**
+   * Converts a YUV_420_888 image from CameraX API to a bitmap, reading the
+   * planes directly, without going through NV21.
+   */
+  @RequiresApi(VERSION_CODES.KITKAT)
+  @Nullable
+  @ExperimentalGetImage
+  public static Bitmap getBitmap(ImageProxy image, @Nullable Bitmap reuse) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int rotation = image.getImageInfo().getRotationDegrees();
+    Plane[] planes = image.getImage().getPlanes();
+
+    int[] argb = getArgbScratch(width, height);
+    YuvToRgbConverter.yuv420ToArgb(planes[0].getBuffer(), planes[0].getRowStride(), planes[1].getBuffer(),
+        planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(), width, height, rotation, argb);
+    return toBitmap(argb, width, height, rotation, reuse);
+  }
+
+  /**
+   * Converts a YUV_420_888 image from CameraX API to an NV21 array taken from
+   * the shared pool. Hand the array back with {@link #releaseNv21(byte[])} once
+   * the detector is done with it.
+   */
+  @RequiresApi(VERSION_CODES.KITKAT)
+  @ExperimentalGetImage
+  public static byte[] getNv21(ImageProxy image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    byte[] nv21 = nv21Pool.acquire(getNv21Size(width, height));
+    yuv420ThreePlanesToNV21(image.getImage().getPlanes(), width, height, nv21);
+    return nv21;
+  }
+
+  /**
+   * Converts the {@code crop} region of a YUV_420_888 image to a pooled NV21
+   * array of {@code crop.width() * crop.height() * 1.5} bytes. The crop must lie
+   * inside the image and have even coordinates and size, so the chroma planes
+   * line up.
+   */
+  @RequiresApi(VERSION_CODES.KITKAT)
+  @ExperimentalGetImage
+  public static byte[] getNv21(ImageProxy image, Rect crop) {
+    int width = crop.width();
+    int height = crop.height();
+    byte[] nv21 = nv21Pool.acquire(getNv21Size(width, height));
+    Plane[] planes = image.getImage().getPlanes();
+
+    PlaneUnpacker.unpackNv21Region(planes[0].getBuffer(), planes[0].getRowStride(), planes[1].getBuffer(),
+        planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(), crop.left, crop.top, width,
+        height, nv21);
+    return nv21;
+  }
+
+  /** Returns an array obtained from {@link #getNv21(ImageProxy)} to the pool. */
+  public static void releaseNv21(byte[] nv21) {
+    nv21Pool.release(nv21);
+  }
+
+  /** The pool backing {@link #getNv21(ImageProxy)}, for hit/miss and allocation stats. */
+  public static ByteArrayPool getNv21Pool() {
+    return nv21Pool;
+  }
+
+  /** Size in bytes of an NV21 frame. */
+  public static int getNv21Size(int width, int height) {
+    int imageSize = width * height;
+    return imageSize + 2 * (imageSize / 4);
+  }
+
+  private static int[] getArgbScratch(int width, int height) {
+    int size = YuvToRgbConverter.getArgbSize(width, height);
+    int[] argb = argbScratch.get();
+    if (argb == null || argb.length < size) {
+      argb = new int[size];
+      argbScratch.set(argb);
+    }
+    return argb;
+  }
+
+  /** Copies converted pixels into {@code reuse}, or a new bitmap if it does not fit. */
+  private static Bitmap toBitmap(int[] argb, int width, int height, int rotation, @Nullable Bitmap reuse) {
+    int outWidth = YuvToRgbConverter.getRotatedWidth(width, height, rotation);
+    int outHeight = YuvToRgbConverter.getRotatedHeight(width, height, rotation);
+
+    Bitmap bmp = reuse;
+    if (bmp == null || bmp.isRecycled() || !bmp.isMutable() || bmp.getWidth() != outWidth
+        || bmp.getHeight() != outHeight || bmp.getConfig() != Bitmap.Config.ARGB_8888) {
+      bmp = Bitmap.createBitmap(outWidth, outHeight, Bitmap.Config.ARGB_8888);
+    }
+    bmp.setPixels(argb, 0, outWidth, 0, 0, outWidth, outHeight);
+    return bmp;
+  }
+
+  /** Describes the size, rotation, capture time and format of a CameraX frame. */
+  public static FrameMetadata getFrameMetadata(ImageProxy image) {
+    return new FrameMetadata.Builder().setWidth(image.getWidth()).setHeight(image.getHeight())
+        .setRotation(image.getImageInfo().getRotationDegrees()).setTimestampNanos(image.getImageInfo().getTimestamp())
+        .setFormat(image.getFormat()).build();
   }
 
   /** Rotates a bitmap if it is converted from a bytebuffer. */
@@ -97,14 +225,77 @@ public class BitmapUtils {
     return rotatedBitmap;
   }
 
+  /** Opens a new stream over the same image each time, so it can be read more than once. */
+  public interface ImageSource {
+    InputStream open() throws IOException;
+  }
+
+  public static ImageSource fromUri(ContentResolver resolver, Uri uri) {
+    return () -> resolver.openInputStream(uri);
+  }
+
+  public static ImageSource fromBytes(byte[] data) {
+    return () -> new ByteArrayInputStream(data);
+  }
+
+  /**
+   * Reads the size of an encoded image without decoding its pixels. Returns
+   * null when the data is not an image.
+   */
+  @Nullable
+  public static BitmapFactory.Options decodeBounds(ImageSource source) throws IOException {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    try (InputStream stream = source.open()) {
+      BitmapFactory.decodeStream(stream, null, options);
+    }
+    return options.outWidth > 0 && options.outHeight > 0 ? options : null;
+  }
+
+  /**
+   * Returns the smallest power of two sample size that brings an image down to
+   * at most {@code maxPixels}.
+   */
+  public static int getSampleSize(int width, int height, int maxPixels) {
+    int sampleSize = 1;
+    while ((long) (width / sampleSize) * (height / sampleSize) > maxPixels) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+
+  /** Decodes an image downsampled by {@code sampleSize}, a power of two. */
+  @Nullable
+  public static Bitmap decodeSampled(ImageSource source, int sampleSize) throws IOException {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inSampleSize = sampleSize;
+    try (InputStream stream = source.open()) {
+      return BitmapFactory.decodeStream(stream, null, options);
+    }
+  }
+
+  /**
+   * Decodes an image from a content or file URI, downsampled so it holds at
+   * most {@link #MAX_DECODE_PIXELS} pixels, and turned upright according to
+   * its EXIF orientation.
+   */
   @Nullable
   public static Bitmap getBitmapFromContentUri(ContentResolver contentResolver, Uri imageUri) throws IOException {
-    Bitmap decodedBitmap = MediaStore.Images.Media.getBitmap(contentResolver, imageUri);
+    ImageSource source = fromUri(contentResolver, imageUri);
+    BitmapFactory.Options bounds = decodeBounds(source);
+    if (bounds == null) {
+      return null;
+    }
+
+    Bitmap decodedBitmap = decodeSampled(source, getSampleSize(bounds.outWidth, bounds.outHeight, MAX_DECODE_PIXELS));
     if (decodedBitmap == null) {
       return null;
     }
-    int orientation = getExifOrientationTag(contentResolver, imageUri);
+    return applyExifOrientation(decodedBitmap, getExifOrientationTag(contentResolver, imageUri));
+  }
 
+  /** Turns a decoded image upright according to its EXIF orientation tag. */
+  public static Bitmap applyExifOrientation(Bitmap bitmap, int orientation) {
     int rotationDegrees = 0;
     boolean flipX = false;
     boolean flipY = false;
@@ -139,9 +330,10 @@ public class BitmapUtils {
       case ExifInterface.ORIENTATION_NORMAL:
       default:
         // No transformations necessary in this case.
+        return bitmap;
     }
 
-    return rotateBitmap(decodedBitmap, rotationDegrees, flipX, flipY);
+    return rotateBitmap(bitmap, rotationDegrees, flipX, flipY);
   }
 
   private static int getExifOrientationTag(ContentResolver resolver, Uri imageUri) {
@@ -153,15 +345,20 @@ public class BitmapUtils {
       return 0;
     }
 
+    return getExifOrientationTag(fromUri(resolver, imageUri));
+  }
+
+  /** Reads the EXIF orientation tag of an encoded image, or 0 if it has none. */
+  public static int getExifOrientationTag(ImageSource source) {
     ExifInterface exif;
-    try (InputStream inputStream = resolver.openInputStream(imageUri)) {
+    try (InputStream inputStream = source.open()) {
       if (inputStream == null) {
         return 0;
       }
 
       exif = new ExifInterface(inputStream);
     } catch (IOException e) {
-      Log.e(TAG, "failed to open file to read rotation meta data: " + imageUri, e);
+      Log.e(TAG, "failed to open file to read rotation meta data", e);
       return 0;
     }
 
@@ -188,11 +385,13 @@ public class BitmapUtils {
    * NV21 format. This happens if the planes share the same buffer, the V buffer
    * is one position before the U buffer and the planes have a pixelStride of 2.
    * If this is case, we can just copy them to the NV21 array.
+   *
+   * <p>
+   * {@code out} must hold at least {@link #getNv21Size(int, int)} bytes.
    */
   @RequiresApi(VERSION_CODES.KITKAT)
-  private static ByteBuffer yuv420ThreePlanesToNV21(Plane[] yuv420888planes, int width, int height) {
+  private static void yuv420ThreePlanesToNV21(Plane[] yuv420888planes, int width, int height, byte[] out) {
     int imageSize = width * height;
-    byte[] out = new byte[imageSize + 2 * (imageSize / 4)];
 
     if (areUVPlanesNV21(yuv420888planes, width, height)) {
       // Copy the Y values.
@@ -206,7 +405,7 @@ public class BitmapUtils {
       // Copy the first U value and the remaining VU values from the U buffer.
       uBuffer.get(out, imageSize + 1, 2 * imageSize / 4 - 1);
     } else {
-      // Fallback to copying the UV values one by one, which is slower but also works.
+      // Fallback to unpacking each plane, which is slower but also works.
       // Unpack Y.
       unpackPlane(yuv420888planes[0], width, height, out, 0, 1);
       // Unpack U.
@@ -214,8 +413,6 @@ public class BitmapUtils {
       // Unpack V.
       unpackPlane(yuv420888planes[2], width, height, out, imageSize, 2);
     }
-
-    return ByteBuffer.wrap(out);
   }
 
   /**
@@ -249,6 +446,15 @@ public class BitmapUtils {
     return areNV21;
   }
 
+  /**
+   * Splits large plane copies into row stripes on the common ForkJoin pool.
+   * Off by default, since the analyzer already competes with the camera and
+   * detector threads for cores.
+   */
+  public static void setParallelUnpack(boolean enabled) {
+    parallelUnpack = enabled;
+  }
+
   /**
    * Unpack an image plane into a byte array.
    *
@@ -258,29 +464,7 @@ public class BitmapUtils {
    */
   @TargetApi(VERSION_CODES.KITKAT)
   private static void unpackPlane(Plane plane, int width, int height, byte[] out, int offset, int pixelStride) {
-    ByteBuffer buffer = plane.getBuffer();
-    buffer.rewind();
-
-    // Compute the size of the current plane.
-    // We assume that it has the aspect ratio as the original image.
-    int numRow = (buffer.limit() + plane.getRowStride() - 1) / plane.getRowStride();
-    if (numRow == 0) {
-      return;
-    }
-    int scaleFactor = height / numRow;
-    int numCol = width / scaleFactor;
-
-    // Extract the data in the output buffer.
-    int outputPos = offset;
-    int rowStart = 0;
-    for (int row = 0; row < numRow; row++) {
-      int inputPos = rowStart;
-      for (int col = 0; col < numCol; col++) {
-        out[outputPos] = buffer.get(inputPos);
-        outputPos += pixelStride;
-        inputPos += plane.getPixelStride();
-      }
-      rowStart += plane.getRowStride();
-    }
+    PlaneUnpacker.unpack(plane.getBuffer(), plane.getRowStride(), plane.getPixelStride(), width, height, out, offset,
+        pixelStride, parallelUnpack ? ForkJoinPool.commonPool() : null);
   }
 }
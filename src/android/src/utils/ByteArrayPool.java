@@ -0,0 +1,113 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+/**
+ * A small pool of byte arrays keyed by exact size.
+ *
+ * <p>
+ * Frame buffers come in one or two sizes per camera session, so the pool is a
+ * fixed set of slots scanned linearly rather than a map: acquiring and
+ * releasing never allocates once the pool is warm. Every array handed out by
+ * {@link #acquire(int)} should be given back with {@link #release(byte[])} as
+ * soon as its contents are no longer needed.
+ */
+public class ByteArrayPool {
+
+  private final byte[][] slots;
+
+  private long hits;
+  private long misses;
+  private long bytesAllocated;
+  private long dropped;
+
+  public ByteArrayPool(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Pool capacity must be positive: " + capacity);
+    }
+    slots = new byte[capacity][];
+  }
+
+  /** Returns an array of exactly {@code size} bytes. Its contents are undefined. */
+  public synchronized byte[] acquire(int size) {
+    for (int i = 0; i < slots.length; i++) {
+      byte[] buffer = slots[i];
+      if (buffer != null && buffer.length == size) {
+        slots[i] = null;
+        hits++;
+        return buffer;
+      }
+    }
+
+    misses++;
+    bytesAllocated += size;
+    return new byte[size];
+  }
+
+  /**
+   * Hands an array back to the pool. An array already in the pool is ignored,
+   * so a double release cannot hand the same array out twice. Otherwise it
+   * goes into the first empty slot; when every slot is taken, the array in the
+   * first slot of a different size is replaced, otherwise the array is dropped.
+   */
+  public synchronized void release(byte[] buffer) {
+    if (buffer == null) {
+      return;
+    }
+
+    int empty = -1;
+    int replaceable = -1;
+    for (int i = 0; i < slots.length; i++) {
+      byte[] slot = slots[i];
+      if (slot == buffer) {
+        return;
+      }
+      if (slot == null) {
+        if (empty < 0) {
+          empty = i;
+        }
+      } else if (replaceable < 0 && slot.length != buffer.length) {
+        replaceable = i;
+      }
+    }
+
+    if (empty >= 0) {
+      slots[empty] = buffer;
+    } else if (replaceable >= 0) {
+      slots[replaceable] = buffer;
+    } else {
+      dropped++;
+    }
+  }
+
+  /** Drops every pooled array, e.g. when the analysis resolution changes. */
+  public synchronized void clear() {
+    for (int i = 0; i < slots.length; i++) {
+      slots[i] = null;
+    }
+  }
+
+  /** Number of acquires served from the pool. */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /** Number of acquires that had to allocate a new array. */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /** Total bytes allocated by acquires that missed the pool. */
+  public synchronized long getBytesAllocated() {
+    return bytesAllocated;
+  }
+
+  /** Number of released arrays that did not fit back into the pool. */
+  public synchronized long getDropped() {
+    return dropped;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "ByteArrayPool{hits=" + hits + ", misses=" + misses + ", bytesAllocated=" + bytesAllocated + ", dropped="
+        + dropped + "}";
+  }
+}
@@ -0,0 +1,110 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+/**
+ * Structure and check digit validation of decoded barcode values.
+ *
+ * <p>
+ * EAN-8, EAN-13, UPC-A, UPC-E and 14 digit ITF (ITF-14, GS1) carry a GS1
+ * modulo 10 check digit. Other ITF values are only checked to be an even
+ * number of digits. Formats without a mandatory check digit always pass.
+ * The format constants are ML Kit's, copied so that this class builds without
+ * ML Kit, for replays on a plain JVM.
+ */
+public final class CheckDigits {
+
+  // Barcode.FORMAT_* values of ML Kit.
+  static final int FORMAT_EAN_13 = 32;
+  static final int FORMAT_EAN_8 = 64;
+  static final int FORMAT_ITF = 128;
+  static final int FORMAT_UPC_A = 512;
+  static final int FORMAT_UPC_E = 1024;
+
+  private CheckDigits() {
+  }
+
+  /** Whether {@code value} is well formed for {@code format}, one of the ML Kit format constants. */
+  public static boolean isValid(int format, String value) {
+    if (value == null) {
+      return false;
+    }
+    switch (format) {
+      case FORMAT_EAN_13:
+        return value.length() == 13 && isGs1(value);
+      case FORMAT_EAN_8:
+        return value.length() == 8 && isGs1(value);
+      case FORMAT_UPC_A:
+        return value.length() == 12 && isGs1(value);
+      case FORMAT_UPC_E:
+        return isValidUpcE(value);
+      case FORMAT_ITF:
+        if (value.length() == 0 || value.length() % 2 != 0 || !isDigits(value)) {
+          return false;
+        }
+        return value.length() != 14 || isGs1(value);
+      default:
+        return true;
+    }
+  }
+
+  /** Checks the GS1 modulo 10 check digit, the last one, of a string of digits. */
+  static boolean isGs1(String digits) {
+    if (!isDigits(digits) || digits.length() < 2) {
+      return false;
+    }
+    int sum = 0;
+    int last = digits.length() - 1;
+    for (int i = last - 1, weight = 3; i >= 0; i--, weight = 4 - weight) {
+      sum += (digits.charAt(i) - '0') * weight;
+    }
+    return (10 - sum % 10) % 10 == digits.charAt(last) - '0';
+  }
+
+  /**
+   * UPC-E is checked with the check digit of its UPC-A expansion. Only the 8
+   * digit form, with number system and check digit, can be verified; a bare
+   * 6 digit body passes when it is all digits.
+   */
+  private static boolean isValidUpcE(String value) {
+    if (!isDigits(value)) {
+      return false;
+    }
+    if (value.length() == 6) {
+      return true;
+    }
+    if (value.length() != 8 || (value.charAt(0) != '0' && value.charAt(0) != '1')) {
+      return false;
+    }
+
+    char ns = value.charAt(0);
+    String x = value.substring(1, 7);
+    char check = value.charAt(7);
+    String body;
+    switch (x.charAt(5)) {
+      case '0':
+      case '1':
+      case '2':
+        body = x.substring(0, 2) + x.charAt(5) + "0000" + x.substring(2, 5);
+        break;
+      case '3':
+        body = x.substring(0, 3) + "00000" + x.substring(3, 5);
+        break;
+      case '4':
+        body = x.substring(0, 4) + "00000" + x.charAt(4);
+        break;
+      default:
+        body = x.substring(0, 5) + "0000" + x.charAt(5);
+        break;
+    }
+    return isGs1(ns + body + check);
+  }
+
+  private static boolean isDigits(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,114 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+/**
+ * K-of-N voting over the reads of the last N frames.
+ *
+ * <p>
+ * A ring buffer of N slots holds the keys read in each of the last N frames,
+ * up to {@link #MAX_KEYS_PER_FRAME} each, so voting allocates nothing. A key
+ * wins once it was read in K of those frames. Frames without reads count
+ * too, so the K frames must be close together. Not thread-safe; meant for the
+ * analyzer thread.
+ */
+public class ConsensusVoter {
+
+  /** Reads of a frame past this many are not counted. */
+  public static final int MAX_KEYS_PER_FRAME = 8;
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final int votes;
+  private final int frames;
+  private final long[] keys;
+  private final int[] counts;
+  private final long[] frameTimes;
+  private int head;
+
+  /**
+   * @param votes  frames a key must be read in, K
+   * @param frames frames looked back over, N, at least K
+   */
+  public ConsensusVoter(int votes, int frames) {
+    if (votes < 1 || frames < votes) {
+      throw new IllegalArgumentException("Need 1 <= votes <= frames, got " + votes + " of " + frames);
+    }
+    this.votes = votes;
+    this.frames = frames;
+    this.keys = new long[frames * MAX_KEYS_PER_FRAME];
+    this.counts = new int[frames];
+    this.frameTimes = new long[frames];
+  }
+
+  /** Starts a new frame, dropping the oldest one. */
+  public void nextFrame(long nowNanos) {
+    head = (head + 1) % frames;
+    counts[head] = 0;
+    frameTimes[head] = nowNanos;
+  }
+
+  /**
+   * Counts a read of {@code key} in the current frame, once per frame, and
+   * returns the number of frames of the window it was read in.
+   */
+  public int vote(long key) {
+    if (!contains(head, key) && counts[head] < MAX_KEYS_PER_FRAME) {
+      keys[head * MAX_KEYS_PER_FRAME + counts[head]++] = key;
+    }
+
+    int count = 0;
+    for (int slot = 0; slot < frames; slot++) {
+      if (contains(slot, key)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** Whether {@code count}, as returned by {@link #vote(long)}, wins. */
+  public boolean isAccepted(int count) {
+    return count >= votes;
+  }
+
+  /** Whether {@code count} just reached the votes needed, so the key won in this frame. */
+  public boolean isNewlyAccepted(int count) {
+    return count == votes;
+  }
+
+  /** Start time of the oldest frame of the window that read {@code key}, or 0. */
+  public long getFirstSeenNanos(long key) {
+    for (int i = 1; i <= frames; i++) {
+      int slot = (head + i) % frames;
+      if (contains(slot, key)) {
+        return frameTimes[slot];
+      }
+    }
+    return 0;
+  }
+
+  /** 64-bit FNV-1a of a read's format and value, the key to vote with. */
+  public static long key(int format, String value) {
+    long hash = (FNV_OFFSET ^ format) * FNV_PRIME;
+    for (int i = 0; i < value.length(); i++) {
+      hash ^= value.charAt(i);
+      hash *= FNV_PRIME;
+    }
+    return hash;
+  }
+
+  public void clear() {
+    for (int slot = 0; slot < frames; slot++) {
+      counts[slot] = 0;
+    }
+  }
+
+  private boolean contains(int slot, long key) {
+    int base = slot * MAX_KEYS_PER_FRAME;
+    for (int i = 0; i < counts[slot]; i++) {
+      if (keys[base + i] == key) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
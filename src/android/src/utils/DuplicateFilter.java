@@ -0,0 +1,228 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import java.util.Arrays;
+
+/**
+ * Remembers recently reported barcodes so each one is reported once per time
+ * window.
+ *
+ * <p>
+ * Barcodes are identified by a 64 bit FNV-1a fingerprint of their format and
+ * raw bytes. Entries live in fixed arrays linked into an LRU list, and an open
+ * addressed table with linear probing maps fingerprints to entries, so checking
+ * a barcode never allocates. When the filter is full, the least recently seen
+ * entry is evicted.
+ *
+ * <p>
+ * Not thread safe: use it from the analyzer thread only. The counters may be
+ * read from any thread.
+ */
+public class DuplicateFilter {
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+  private static final int NONE = -1;
+
+  private final long windowMs;
+  private final int capacity;
+
+  // Entry storage, indexed by entry number.
+  private final long[] fingerprints;
+  private final long[] reportedAt;
+  private final int[] prev;
+  private final int[] next;
+
+  // Hash table of entry numbers, NONE for empty slots.
+  private final int[] table;
+  private final int mask;
+
+  private int size;
+  private int head = NONE;
+  private int tail = NONE;
+
+  private volatile long hits;
+  private volatile long evictions;
+  private volatile long expirations;
+
+  /**
+   * @param windowMs how long a reported barcode is suppressed, in milliseconds
+   * @param capacity maximum number of barcodes remembered at once
+   */
+  public DuplicateFilter(long windowMs, int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+    }
+    this.windowMs = windowMs;
+    this.capacity = capacity;
+
+    fingerprints = new long[capacity];
+    reportedAt = new long[capacity];
+    prev = new int[capacity];
+    next = new int[capacity];
+
+    // Keep the load factor at or below 1/2.
+    int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+    table = new int[tableSize];
+    mask = tableSize - 1;
+    Arrays.fill(table, NONE);
+  }
+
+  /**
+   * Returns true when the barcode should be reported: it was not seen before,
+   * or its window has passed. Returns false for a duplicate.
+   */
+  public boolean shouldReport(int format, byte[] rawBytes, long nowMs) {
+    long hash = FNV_OFFSET ^ format;
+    hash *= FNV_PRIME;
+    for (byte b : rawBytes) {
+      hash ^= b & 0xff;
+      hash *= FNV_PRIME;
+    }
+    return check(hash, nowMs);
+  }
+
+  /** Same as {@link #shouldReport(int, byte[], long)}, for barcodes without raw bytes. */
+  public boolean shouldReport(int format, String value, long nowMs) {
+    long hash = FNV_OFFSET ^ format;
+    hash *= FNV_PRIME;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      hash ^= c & 0xff;
+      hash *= FNV_PRIME;
+      hash ^= c >>> 8;
+      hash *= FNV_PRIME;
+    }
+    return check(hash, nowMs);
+  }
+
+  /** Forgets every barcode; counters are kept. */
+  public void clear() {
+    Arrays.fill(table, NONE);
+    size = 0;
+    head = NONE;
+    tail = NONE;
+  }
+
+  /** Number of duplicates suppressed. */
+  public long getHits() {
+    return hits;
+  }
+
+  /** Number of entries dropped because the filter was full. */
+  public long getEvictions() {
+    return evictions;
+  }
+
+  /** Number of barcodes reported again after their window passed. */
+  public long getExpirations() {
+    return expirations;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private boolean check(long fingerprint, long nowMs) {
+    int slot = findSlot(fingerprint);
+    int entry = table[slot];
+
+    if (entry != NONE) {
+      moveToFront(entry);
+      if (nowMs - reportedAt[entry] < windowMs) {
+        hits++;
+        return false;
+      }
+      reportedAt[entry] = nowMs;
+      expirations++;
+      return true;
+    }
+
+    if (size == capacity) {
+      entry = tail;
+      unlink(entry);
+      removeFromTable(fingerprints[entry]);
+      evictions++;
+      // The table changed, so the free slot may have moved.
+      slot = findSlot(fingerprint);
+    } else {
+      entry = size++;
+    }
+
+    fingerprints[entry] = fingerprint;
+    reportedAt[entry] = nowMs;
+    table[slot] = entry;
+    linkFirst(entry);
+    return true;
+  }
+
+  /** Returns the slot holding the fingerprint, or the empty slot where it would go. */
+  private int findSlot(long fingerprint) {
+    int slot = mix(fingerprint) & mask;
+    while (table[slot] != NONE && fingerprints[table[slot]] != fingerprint) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /** Removes a fingerprint with backward shift deletion, so no tombstones are needed. */
+  private void removeFromTable(long fingerprint) {
+    int slot = findSlot(fingerprint);
+    if (table[slot] == NONE) {
+      return;
+    }
+
+    int gap = slot;
+    int current = (gap + 1) & mask;
+    while (table[current] != NONE) {
+      int home = mix(fingerprints[table[current]]) & mask;
+      // Move the entry into the gap unless its home lies cyclically in (gap, current].
+      boolean stays = gap <= current ? (gap < home && home <= current) : (gap < home || home <= current);
+      if (!stays) {
+        table[gap] = table[current];
+        gap = current;
+      }
+      current = (current + 1) & mask;
+    }
+    table[gap] = NONE;
+  }
+
+  private void moveToFront(int entry) {
+    if (head != entry) {
+      unlink(entry);
+      linkFirst(entry);
+    }
+  }
+
+  private void linkFirst(int entry) {
+    prev[entry] = NONE;
+    next[entry] = head;
+    if (head != NONE) {
+      prev[head] = entry;
+    }
+    head = entry;
+    if (tail == NONE) {
+      tail = entry;
+    }
+  }
+
+  private void unlink(int entry) {
+    int p = prev[entry];
+    int n = next[entry];
+    if (p != NONE) {
+      next[p] = n;
+    } else {
+      head = n;
+    }
+    if (n != NONE) {
+      prev[n] = p;
+    } else {
+      tail = p;
+    }
+  }
+
+  private static int mix(long fingerprint) {
+    long h = fingerprint ^ (fingerprint >>> 33);
+    h *= 0xff51afd7ed558ccdL;
+    return (int) (h ^ (h >>> 29));
+  }
+}
@@ -0,0 +1,127 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Arrays;
+
+/**
+ * Counts how often each barcode format was read in one workflow, kept in the
+ * shared preferences across sessions.
+ *
+ * <p>
+ * All counts are halved whenever their total passes {@link #MAX_TOTAL}, so old
+ * reads weigh less than recent ones and a workflow that moves to other
+ * formats is followed after a few hundred reads.
+ */
+public class FormatStats {
+  private static final String PREFERENCES = "ReadyOpBarcodeFormats";
+
+  /** ML Kit formats are single bits, from Code 128 (1) to Aztec (4096). */
+  private static final int FORMAT_COUNT = 13;
+  private static final int MAX_TOTAL = 512;
+
+  private final SharedPreferences preferences;
+  private final String workflow;
+  private final int[] counts = new int[FORMAT_COUNT];
+  private int total;
+  private boolean dirty;
+
+  public FormatStats(Context context, String workflow) {
+    this.preferences = context.getApplicationContext().getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    this.workflow = workflow;
+
+    String saved = preferences.getString(workflow, null);
+    if (saved != null) {
+      String[] values = saved.split(",");
+      for (int i = 0; i < FORMAT_COUNT && i < values.length; i++) {
+        try {
+          counts[i] = Math.max(0, Integer.parseInt(values[i]));
+        } catch (NumberFormatException e) {
+          counts[i] = 0;
+        }
+        total += counts[i];
+      }
+    }
+  }
+
+  public String getWorkflow() {
+    return workflow;
+  }
+
+  /** Counts a read of {@code format}, one of the ML Kit format constants. */
+  public synchronized void record(int format) {
+    if (format <= 0 || Integer.bitCount(format) != 1) {
+      return;
+    }
+    int index = Integer.numberOfTrailingZeros(format);
+    if (index >= FORMAT_COUNT) {
+      return;
+    }
+
+    counts[index]++;
+    total++;
+    if (total > MAX_TOTAL) {
+      total = 0;
+      for (int i = 0; i < FORMAT_COUNT; i++) {
+        counts[i] /= 2;
+        total += counts[i];
+      }
+    }
+    dirty = true;
+  }
+
+  public synchronized int getTotal() {
+    return total;
+  }
+
+  /**
+   * Returns the fewest formats of {@code allowed}, most frequent first, that
+   * make up at least {@code coverage} of its reads, or 0 while it has fewer
+   * than {@code minReads} reads.
+   */
+  public synchronized int getTopFormats(int allowed, double coverage, int minReads) {
+    Integer[] order = new Integer[FORMAT_COUNT];
+    int allowedTotal = 0;
+    for (int i = 0; i < FORMAT_COUNT; i++) {
+      order[i] = i;
+      if ((allowed & (1 << i)) != 0) {
+        allowedTotal += counts[i];
+      }
+    }
+    if (allowedTotal < minReads) {
+      return 0;
+    }
+
+    Arrays.sort(order, (a, b) -> Integer.compare(counts[b], counts[a]));
+    int formats = 0;
+    int covered = 0;
+    for (int index : order) {
+      if ((allowed & (1 << index)) == 0 || counts[index] == 0) {
+        continue;
+      }
+      formats |= 1 << index;
+      covered += counts[index];
+      if (covered >= coverage * allowedTotal) {
+        break;
+      }
+    }
+    return formats;
+  }
+
+  /** Writes the counts back, in the background, when they changed. */
+  public synchronized void save() {
+    if (!dirty) {
+      return;
+    }
+    StringBuilder value = new StringBuilder();
+    for (int i = 0; i < FORMAT_COUNT; i++) {
+      if (i > 0) {
+        value.append(',');
+      }
+      value.append(counts[i]);
+    }
+    preferences.edit().putString(workflow, value.toString()).apply();
+    dirty = false;
+  }
+}
@@ -16,12 +16,17 @@
 
 package com.readyop.cordova.plugins.barcode.scanner.utils;
 
-/** Describing a frame info. */
+/**
+ * Describing a frame info: its size, rotation, capture time and, for camera
+ * frames, the {@code ImageFormat} of its planes.
+ */
 public class FrameMetadata {
 
   private final int width;
   private final int height;
   private final int rotation;
+  private final long timestampNanos;
+  private final int format;
 
   public int getWidth() {
     return width;
@@ -35,10 +40,22 @@ public class FrameMetadata {
     return rotation;
   }
 
-  private FrameMetadata(int width, int height, int rotation) {
+  /** Capture time of the frame in nanoseconds, from the camera clock; 0 when unknown. */
+  public long getTimestampNanos() {
+    return timestampNanos;
+  }
+
+  /** The {@code android.graphics.ImageFormat} of the frame, such as YUV_420_888; 0 when unknown. */
+  public int getFormat() {
+    return format;
+  }
+
+  private FrameMetadata(int width, int height, int rotation, long timestampNanos, int format) {
     this.width = width;
     this.height = height;
     this.rotation = rotation;
+    this.timestampNanos = timestampNanos;
+    this.format = format;
   }
 
   public static class Builder {
@@ -46,6 +63,8 @@ public class FrameMetadata {
     private int width;
     private int height;
     private int rotation;
+    private long timestampNanos;
+    private int format;
 
     public Builder setWidth(int width) {
       this.width = width;
@@ -62,8 +81,18 @@ public class FrameMetadata {
       return this;
     }
 
+    public Builder setTimestampNanos(long timestampNanos) {
+      this.timestampNanos = timestampNanos;
+      return this;
+    }
+
+    public Builder setFormat(int format) {
+      this.format = format;
+      return this;
+    }
+
     public FrameMetadata build() {
-      return new FrameMetadata(width, height, rotation);
+      return new FrameMetadata(width, height, rotation, timestampNanos, format);
     }
   }
 }
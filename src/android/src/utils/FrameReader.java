@@ -0,0 +1,128 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads back a recording made by {@link FrameWriter}.
+ *
+ * <p>
+ * The file is memory-mapped, and the planes of a frame are views into the
+ * mapping, so frames are read without copying and the OS pages them in as
+ * they are used. Plain Java only, so recordings can be replayed on any JVM. A
+ * record cut short at the end of the file, as when the app died while
+ * recording, ends the recording. Not thread safe.
+ */
+public class FrameReader implements Closeable {
+
+  /** A recorded frame; its planes stay valid for as long as the reader is open. */
+  public static final class Frame {
+    /** Position of the frame in the recording, from 0. */
+    public final int index;
+    public final FrameMetadata metadata;
+    public final ByteBuffer[] planes;
+    public final int[] rowStrides;
+    public final int[] pixelStrides;
+
+    Frame(int index, FrameMetadata metadata, ByteBuffer[] planes, int[] rowStrides, int[] pixelStrides) {
+      this.index = index;
+      this.metadata = metadata;
+      this.planes = planes;
+      this.rowStrides = rowStrides;
+      this.pixelStrides = pixelStrides;
+    }
+  }
+
+  private final RandomAccessFile file;
+  private final MappedByteBuffer map;
+  private int index;
+
+  public FrameReader(File path) throws IOException {
+    file = new RandomAccessFile(path, "r");
+    try {
+      FileChannel channel = file.getChannel();
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Recording larger than 2 GB: " + path);
+      }
+      map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (map.remaining() < FrameWriter.FILE_HEADER_BYTES || map.getInt() != FrameWriter.MAGIC) {
+        throw new IOException("Not a frame recording: " + path);
+      }
+      int version = map.getInt();
+      if (version != FrameWriter.VERSION) {
+        throw new IOException("Unsupported recording version " + version + ": " + path);
+      }
+    } catch (IOException e) {
+      file.close();
+      throw e;
+    }
+  }
+
+  /** Returns the next frame, or null at the end of the recording. */
+  public Frame next() {
+    if (map.remaining() < 4) {
+      return null;
+    }
+    int start = map.position();
+    int length = map.getInt();
+    if (length < FrameWriter.FRAME_HEADER_BYTES - 4 || map.remaining() < length) {
+      map.position(start);
+      return null;
+    }
+    int end = map.position() + length;
+
+    FrameMetadata metadata = new FrameMetadata.Builder().setTimestampNanos(map.getLong()).setFormat(map.getInt())
+        .setWidth(map.getInt()).setHeight(map.getInt()).setRotation(map.getInt()).build();
+    int planeCount = map.getInt();
+    if (planeCount < 0 || planeCount > FrameWriter.MAX_PLANES
+        || end - map.position() < planeCount * FrameWriter.PLANE_HEADER_BYTES) {
+      map.position(start);
+      return null;
+    }
+
+    int[] rowStrides = new int[planeCount];
+    int[] pixelStrides = new int[planeCount];
+    int[] lengths = new int[planeCount];
+    long planeBytes = 0;
+    for (int i = 0; i < planeCount; i++) {
+      rowStrides[i] = map.getInt();
+      pixelStrides[i] = map.getInt();
+      lengths[i] = map.getInt();
+      planeBytes += lengths[i] >= 0 ? lengths[i] : Integer.MAX_VALUE;
+    }
+    if (planeBytes != end - map.position()) {
+      // Not a record this reader wrote; treat it as the end.
+      map.position(start);
+      return null;
+    }
+
+    ByteBuffer[] planes = new ByteBuffer[planeCount];
+    int position = map.position();
+    for (int i = 0; i < planeCount; i++) {
+      ByteBuffer view = map.duplicate();
+      view.position(position);
+      view.limit(position + lengths[i]);
+      planes[i] = view.slice();
+      position += lengths[i];
+    }
+    map.position(end);
+
+    return new Frame(index++, metadata, planes, rowStrides, pixelStrides);
+  }
+
+  /** Goes back to the first frame. */
+  public void rewind() {
+    map.position(FrameWriter.FILE_HEADER_BYTES);
+    index = 0;
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+}
@@ -0,0 +1,269 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs a {@link FrameReader} recording through the analysis pipeline on a
+ * plain JVM, with no phone or camera.
+ *
+ * <p>
+ * Each frame goes through the stages of the analyzer and the capture
+ * activity, with the same classes: the {@link LumaPrefilter}, NV21 conversion
+ * of the region by {@link PlaneUnpacker}, the detector, then the lookup set,
+ * check digit, consensus and duplicate checks of {@link ResultChecks}, which
+ * the scanner itself runs. The detector is a {@link Detector} supplied
+ * by the caller, a wrapper around a JVM decoder or a mock that returns known
+ * results for given frames. Consensus and duplicate windows run on the
+ * recorded frame timestamps, so a replay gives the same results every time.
+ * The optional stages are off until set; passing null turns one off again.
+ */
+public class FrameReplay {
+
+  /** Finds barcodes in a frame. */
+  public interface Detector {
+    /**
+     * @param nv21   the region of the frame, converted to NV21
+     * @param region size of the region, with the rotation and timestamp of the frame
+     * @param frame  the recorded frame, for detectors that want the planes or the index
+     */
+    List<Detection> detect(byte[] nv21, FrameMetadata region, FrameReader.Frame frame);
+  }
+
+  /**
+   * A barcode found by a {@link Detector}; format is one of the ML Kit format
+   * constants. As on the device, duplicates are told apart by the raw bytes
+   * when there are any, and by the value otherwise.
+   */
+  public static final class Detection {
+    public final int format;
+    public final String value;
+    public final byte[] rawBytes;
+
+    public Detection(int format, String value) {
+      this(format, value, null);
+    }
+
+    public Detection(int format, String value, byte[] rawBytes) {
+      this.format = format;
+      this.value = value;
+      this.rawBytes = rawBytes;
+    }
+  }
+
+  /** A barcode that passed every check, with the frame it was accepted in. */
+  public static final class Accepted {
+    public final int frameIndex;
+    public final long timestampNanos;
+    public final int format;
+    public final String value;
+
+    Accepted(int frameIndex, long timestampNanos, int format, String value) {
+      this.frameIndex = frameIndex;
+      this.timestampNanos = timestampNanos;
+      this.format = format;
+      this.value = value;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.US, "#%d %d %s", frameIndex, format, value);
+    }
+  }
+
+  /** Counts and stage timings of a replay. */
+  public static final class Report {
+    public final LatencyHistogram prefilter = new LatencyHistogram();
+    public final LatencyHistogram conversion = new LatencyHistogram();
+    public final LatencyHistogram detector = new LatencyHistogram();
+    public final LatencyHistogram frame = new LatencyHistogram();
+    /** Time consensus added, from the first frame of the window with a code to its acceptance. */
+    public final LatencyHistogram consensusDelay = new LatencyHistogram();
+    public final List<Accepted> accepted = new ArrayList<>();
+    public int frames;
+    public int framesSkipped;
+    public int detections;
+    public int lookupMisses;
+    public int checkDigitRejects;
+    public int consensusPending;
+    public int duplicates;
+    public long elapsedNanos;
+
+    public double getFramesPerSecond() {
+      return elapsedNanos > 0 ? frames * 1e9 / elapsedNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.US,
+          "%d frames in %.1f ms (%.1f fps), %d skipped, %d detections, %d accepted%n"
+              + "rejected: %d lookup, %d check digit, %d consensus pending, %d duplicates%n"
+              + "prefilter %s%nconversion %s%ndetector %s%nframe %s%nconsensus delay %s",
+          frames, elapsedNanos / 1e6, getFramesPerSecond(), framesSkipped, detections, accepted.size(),
+          lookupMisses, checkDigitRejects, consensusPending, duplicates, summary(prefilter), summary(conversion),
+          summary(detector), summary(frame), summary(consensusDelay));
+    }
+
+    private static String summary(LatencyHistogram histogram) {
+      return String.format(Locale.US, "n=%d mean=%.3f p50=%.3f p99=%.3f max=%.3f ms", histogram.getCount(),
+          histogram.getMeanMs(), histogram.getQuantileMs(0.5), histogram.getQuantileMs(0.99),
+          histogram.getMaxMs());
+    }
+  }
+
+  private final Detector detector;
+  private LumaPrefilter prefilter;
+  private int[] region;
+  private final ResultChecks checks = new ResultChecks();
+  private byte[] nv21 = new byte[0];
+
+  public FrameReplay(Detector detector) {
+    this.detector = detector;
+  }
+
+  /** Skips the detector on frames the prefilter finds no candidates in, as {@code prefilter: true} does. */
+  public FrameReplay setPrefilter(LumaPrefilter prefilter) {
+    this.prefilter = prefilter;
+    return this;
+  }
+
+  /**
+   * Analyzes only a region of each frame, in buffer pixels, like a region of
+   * interest. It is clamped to the frame and rounded to even pixels for the
+   * chroma planes. {@link #clearRegion()} goes back to the full frame.
+   */
+  public FrameReplay setRegion(int left, int top, int width, int height) {
+    region = new int[] { left, top, width, height };
+    return this;
+  }
+
+  public FrameReplay clearRegion() {
+    region = null;
+    return this;
+  }
+
+  /** Drops codes outside {@code lookupIndex}, as {@code lookupSet: true} does. */
+  public FrameReplay setLookupIndex(LookupIndex lookupIndex) {
+    checks.setLookupIndex(lookupIndex);
+    return this;
+  }
+
+  public FrameReplay setCheckDigits(boolean checkDigits) {
+    checks.setCheckDigits(checkDigits);
+    return this;
+  }
+
+  /** K-of-N consensus, as the {@code consensus} option; votes of 1 turns it off. */
+  public FrameReplay setConsensus(int votes, int frames) {
+    checks.setConsensus(votes, frames);
+    return this;
+  }
+
+  /** Reports each code once per window, as continuous scanning does. */
+  public FrameReplay setDuplicateFilter(DuplicateFilter duplicateFilter) {
+    checks.setDuplicateFilter(duplicateFilter);
+    return this;
+  }
+
+  /** Replays every frame of {@code reader} from its current position. */
+  public Report run(FrameReader reader) {
+    Report report = new Report();
+    long runStart = System.nanoTime();
+
+    FrameReader.Frame frame;
+    while ((frame = reader.next()) != null) {
+      long frameStart = System.nanoTime();
+      analyze(frame, report);
+      report.frame.recordNanos(System.nanoTime() - frameStart);
+      report.frames++;
+    }
+
+    report.elapsedNanos = System.nanoTime() - runStart;
+    return report;
+  }
+
+  private void analyze(FrameReader.Frame frame, Report report) {
+    FrameMetadata metadata = frame.metadata;
+    int left = 0;
+    int top = 0;
+    int width = metadata.getWidth();
+    int height = metadata.getHeight();
+    if (region != null) {
+      left = Math.max(0, Math.min(region[0], width)) & ~1;
+      top = Math.max(0, Math.min(region[1], height)) & ~1;
+      width = Math.min(region[2], metadata.getWidth() - left) & ~1;
+      height = Math.min(region[3], metadata.getHeight() - top) & ~1;
+    }
+    FrameMetadata crop = new FrameMetadata.Builder().setWidth(width).setHeight(height)
+        .setRotation(metadata.getRotation()).setTimestampNanos(metadata.getTimestampNanos())
+        .setFormat(metadata.getFormat()).build();
+
+    List<Detection> detections = Collections.emptyList();
+    if (width > 0 && height > 0 && frame.planes.length == 3 && hasCandidates(frame, left, top, crop, report)) {
+      long conversionStart = System.nanoTime();
+      int size = width * height + 2 * (width * height / 4);
+      if (nv21.length != size) {
+        nv21 = new byte[size];
+      }
+      PlaneUnpacker.unpackNv21Region(frame.planes[0], frame.rowStrides[0], frame.planes[1], frame.planes[2],
+          frame.rowStrides[1], frame.pixelStrides[1], left, top, width, height, nv21);
+      report.conversion.recordNanos(System.nanoTime() - conversionStart);
+
+      long detectorStart = System.nanoTime();
+      detections = detector.detect(nv21, crop, frame);
+      report.detector.recordNanos(System.nanoTime() - detectorStart);
+      report.detections += detections.size();
+    } else {
+      report.framesSkipped++;
+    }
+
+    accept(frame, detections, report);
+  }
+
+  private boolean hasCandidates(FrameReader.Frame frame, int left, int top, FrameMetadata crop, Report report) {
+    if (prefilter == null) {
+      return true;
+    }
+    long start = System.nanoTime();
+    boolean candidates = prefilter.hasCandidates(frame.planes[0], frame.rowStrides[0], left, top, crop);
+    report.prefilter.recordNanos(System.nanoTime() - start);
+    return candidates;
+  }
+
+  /** The checks of the capture activity's listener; called for empty frames too. */
+  private void accept(FrameReader.Frame frame, List<Detection> detections, Report report) {
+    long timestamp = frame.metadata.getTimestampNanos();
+    checks.nextFrame(timestamp);
+
+    for (Detection detection : detections) {
+      if (detection == null || detection.value == null) {
+        continue;
+      }
+      ResultChecks.Verdict verdict = checks.check(detection.format, detection.value, detection.rawBytes);
+      long consensusDelay = checks.getConsensusDelayNanos();
+      if (consensusDelay >= 0) {
+        report.consensusDelay.recordNanos(consensusDelay);
+      }
+
+      switch (verdict) {
+        case NOT_IN_LOOKUP_SET:
+          report.lookupMisses++;
+          break;
+        case BAD_CHECK_DIGIT:
+          report.checkDigitRejects++;
+          break;
+        case CONSENSUS_PENDING:
+          report.consensusPending++;
+          break;
+        case DUPLICATE:
+          report.duplicates++;
+          break;
+        default:
+          report.accepted.add(new Accepted(frame.index, timestamp, detection.format, detection.value));
+          break;
+      }
+    }
+  }
+}
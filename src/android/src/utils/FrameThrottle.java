@@ -0,0 +1,91 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+/**
+ * Decides which analysis frames go to the detector.
+ *
+ * <p>
+ * Frames are let through at most at the target rate. On top of that, the
+ * throttle keeps a moving average of the detector latency and spaces frames so
+ * the detector is busy at most {@code maxDutyCycle} of the time. A slow device
+ * then drops frames instead of starving the preview, and a fast one does not
+ * burn battery analysing more frames than needed.
+ *
+ * <p>
+ * Frames are accepted on a schedule rather than by their distance from the
+ * last accepted frame: a frame up to a fifth of the interval early goes
+ * through, and the schedule then moves on by one interval. Camera timestamps
+ * jitter, so otherwise a 30 fps camera throttled to 30 fps would drop every
+ * frame that arrives a little early and settle near 15 fps.
+ *
+ * <p>
+ * Not thread safe: call it from the analyzer thread. The counters may be read
+ * from any thread.
+ */
+public class FrameThrottle {
+
+  /** Weight of the newest latency sample in the moving average. */
+  private static final double LATENCY_SMOOTHING = 0.2;
+
+  private final long minIntervalNanos;
+  private final double maxDutyCycle;
+
+  private long lastAcceptedNanos = Long.MIN_VALUE;
+  private volatile double averageLatencyNanos;
+
+  private volatile long framesAccepted;
+  private volatile long framesDropped;
+
+  /**
+   * @param targetFps    maximum number of frames analysed per second, 0 for no limit
+   * @param maxDutyCycle share of time the detector may be busy, in (0, 1]
+   */
+  public FrameThrottle(double targetFps, double maxDutyCycle) {
+    if (maxDutyCycle <= 0 || maxDutyCycle > 1) {
+      throw new IllegalArgumentException("Duty cycle must be in (0, 1]: " + maxDutyCycle);
+    }
+    this.minIntervalNanos = targetFps > 0 ? (long) (1e9 / targetFps) : 0;
+    this.maxDutyCycle = maxDutyCycle;
+  }
+
+  /** Returns true if the frame arriving at {@code nowNanos} should be analysed. */
+  public boolean shouldAnalyze(long nowNanos) {
+    long interval = Math.max(minIntervalNanos, (long) (averageLatencyNanos / maxDutyCycle));
+
+    long tolerance = interval / 5;
+
+    if (lastAcceptedNanos == Long.MIN_VALUE) {
+      lastAcceptedNanos = nowNanos;
+    } else if (nowNanos - lastAcceptedNanos < interval - tolerance) {
+      framesDropped++;
+      return false;
+    } else {
+      // Advance the schedule by one interval, but never past this frame, and
+      // never so far behind it that frames after a pause pass in a burst.
+      lastAcceptedNanos = Math.min(nowNanos, Math.max(lastAcceptedNanos + interval, nowNanos - tolerance));
+    }
+    framesAccepted++;
+    return true;
+  }
+
+  /** Feeds the time the detector took for an accepted frame. */
+  public void recordLatency(long latencyNanos) {
+    if (averageLatencyNanos == 0) {
+      averageLatencyNanos = latencyNanos;
+    } else {
+      averageLatencyNanos += LATENCY_SMOOTHING * (latencyNanos - averageLatencyNanos);
+    }
+  }
+
+  /** Moving average of the detector latency, in milliseconds. */
+  public double getAverageLatencyMs() {
+    return averageLatencyNanos / 1e6;
+  }
+
+  public long getFramesAccepted() {
+    return framesAccepted;
+  }
+
+  public long getFramesDropped() {
+    return framesDropped;
+  }
+}
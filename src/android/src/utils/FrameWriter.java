@@ -0,0 +1,124 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends camera frames to a recording that {@link FrameReader} can map and
+ * replay.
+ *
+ * <p>
+ * A recording is a file header, the magic {@code ROFR} and a version, followed
+ * by one record per frame. A record holds its length in bytes, not counting
+ * the length field itself, the {@link FrameMetadata} (timestamp, format,
+ * width, height, rotation), the number of planes, the row stride, pixel
+ * stride and length of each plane, then the plane bytes exactly as the camera
+ * delivered them, padding included. All numbers are big-endian. Planes are
+ * written straight from their buffers with one gathering write per frame.
+ *
+ * <p>
+ * Not thread safe.
+ */
+public class FrameWriter implements Closeable {
+
+  static final int MAGIC = 0x524f4652;
+  static final int VERSION = 1;
+  static final int FILE_HEADER_BYTES = 8;
+  /** Frames with more planes than this, YUV's three, are rejected. */
+  public static final int MAX_PLANES = 3;
+
+  static final int FRAME_HEADER_BYTES = 4 + 8 + 4 * 4 + 4;
+  static final int PLANE_HEADER_BYTES = 3 * 4;
+
+  private final FileChannel channel;
+  private final ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_BYTES + MAX_PLANES * PLANE_HEADER_BYTES);
+  private final ByteBuffer[] gather = new ByteBuffer[1 + MAX_PLANES];
+  private int frames;
+  private long bytes;
+
+  /** Creates {@code file}, replacing any file of the same name. */
+  public FrameWriter(File file) throws IOException {
+    channel = new FileOutputStream(file).getChannel();
+    ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_BYTES);
+    fileHeader.putInt(MAGIC).putInt(VERSION).flip();
+    writeFully(new ByteBuffer[] { fileHeader }, 1);
+    bytes = FILE_HEADER_BYTES;
+  }
+
+  /**
+   * Appends a frame. The planes are read from position 0 to their limit; their
+   * own position and limit are left alone.
+   */
+  public void write(FrameMetadata metadata, ByteBuffer[] planes, int[] rowStrides, int[] pixelStrides)
+      throws IOException {
+    if (planes.length > MAX_PLANES || rowStrides.length != planes.length || pixelStrides.length != planes.length) {
+      throw new IllegalArgumentException("Need up to " + MAX_PLANES + " planes with one stride each");
+    }
+
+    long length = FRAME_HEADER_BYTES - 4 + (long) planes.length * PLANE_HEADER_BYTES;
+    for (ByteBuffer plane : planes) {
+      length += plane.limit();
+    }
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Frame too large to record: " + length + " bytes");
+    }
+
+    header.clear();
+    header.putInt((int) length);
+    header.putLong(metadata.getTimestampNanos());
+    header.putInt(metadata.getFormat());
+    header.putInt(metadata.getWidth());
+    header.putInt(metadata.getHeight());
+    header.putInt(metadata.getRotation());
+    header.putInt(planes.length);
+    for (int i = 0; i < planes.length; i++) {
+      header.putInt(rowStrides[i]);
+      header.putInt(pixelStrides[i]);
+      header.putInt(planes[i].limit());
+    }
+    header.flip();
+
+    gather[0] = header;
+    for (int i = 0; i < planes.length; i++) {
+      ByteBuffer plane = planes[i].duplicate();
+      plane.position(0);
+      gather[1 + i] = plane;
+    }
+    writeFully(gather, 1 + planes.length);
+    for (int i = 1; i < gather.length; i++) {
+      gather[i] = null;
+    }
+
+    frames++;
+    bytes += 4 + length;
+  }
+
+  /** Frames written so far. */
+  public int getFrameCount() {
+    return frames;
+  }
+
+  /** Size of the recording so far, in bytes. */
+  public long getBytesWritten() {
+    return bytes;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private void writeFully(ByteBuffer[] buffers, int count) throws IOException {
+    long remaining = 0;
+    for (int i = 0; i < count; i++) {
+      remaining += buffers[i].remaining();
+    }
+    while (remaining > 0) {
+      remaining -= channel.write(buffers, 0, count);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations with fixed log-linear buckets.
+ *
+ * <p>
+ * Durations are kept in microseconds. Below 16 us every value has its own
+ * bucket; above that, each power of two is split into 16 linear buckets, so a
+ * bucket is never wider than 1/16 of its lower bound. Values above about 34
+ * minutes all land in the last bucket.
+ *
+ * <p>
+ * Recording only touches atomic counters: it takes no lock and allocates
+ * nothing, so it can be called on the analyzer thread for every frame while
+ * another thread reads the percentiles.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BITS = 4;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int MAX_EXPONENT = 30;
+  private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sumMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  /** Records a duration given in nanoseconds. */
+  public void recordNanos(long nanos) {
+    long micros = Math.max(0, nanos / 1000);
+
+    counts.incrementAndGet(bucketOf(micros));
+    count.incrementAndGet();
+    sumMicros.addAndGet(micros);
+
+    long max = maxMicros.get();
+    while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+      max = maxMicros.get();
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  /** Mean of the recorded durations, in milliseconds. */
+  public double getMeanMs() {
+    long n = count.get();
+    return n == 0 ? 0 : sumMicros.get() / 1000.0 / n;
+  }
+
+  /** Longest recorded duration, in milliseconds. */
+  public double getMaxMs() {
+    return maxMicros.get() / 1000.0;
+  }
+
+  /**
+   * Returns the duration, in milliseconds, below which the given share of the
+   * samples fall, as the midpoint of the bucket holding it. Returns 0 when
+   * nothing was recorded.
+   *
+   * @param quantile between 0 and 1, for instance 0.99 for the 99th percentile
+   */
+  public double getQuantileMs(double quantile) {
+    // Work on a copy, so samples recorded meanwhile cannot move the total.
+    long[] snapshot = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return (lowerBound(i) + lowerBound(i + 1)) / 2.0 / 1000.0;
+      }
+    }
+    return getMaxMs();
+  }
+
+  /** Clears every sample. Samples recorded while resetting may be partly kept. */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    count.set(0);
+    sumMicros.set(0);
+    maxMicros.set(0);
+  }
+
+  private static int bucketOf(long micros) {
+    if (micros < SUB_COUNT) {
+      return (int) micros;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKETS - 1;
+    }
+    int shift = exponent - SUB_BITS;
+    int mantissa = (int) (micros >>> shift) & (SUB_COUNT - 1);
+    return (shift + 1) * SUB_COUNT + mantissa;
+  }
+
+  /** Smallest value, in microseconds, that falls in the bucket. */
+  private static long lowerBound(int bucket) {
+    if (bucket < SUB_COUNT) {
+      return bucket;
+    }
+    int shift = bucket / SUB_COUNT - 1;
+    int mantissa = bucket % SUB_COUNT;
+    return (long) (SUB_COUNT + mantissa) << shift;
+  }
+}
@@ -0,0 +1,222 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-only set of codes, such as the SKUs of a manifest, to check decoded
+ * barcodes against on the analyzer thread.
+ *
+ * <p>
+ * The codes stay in the UTF-8 text they were loaded from, one per line. An
+ * open-addressed hash table holds a 64-bit fingerprint of every code and
+ * where its line starts; a lookup compares fingerprints first and the bytes
+ * only on a fingerprint match, so matches are exact. That takes the text plus
+ * 12 bytes per table slot, with the table kept at most three quarters full:
+ * about 20 MB for 500,000 codes of 13 characters.
+ */
+public final class LookupIndex {
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final byte[] data;
+  private final long fingerprintMask;
+  private final long[] fingerprints;
+  private final int[] starts;
+  private final int mask;
+  private final int size;
+  private final int duplicates;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  private LookupIndex(byte[] data, int lines, long fingerprintMask) {
+    this.data = data;
+    this.fingerprintMask = fingerprintMask;
+
+    int capacity = Integer.highestOneBit(Math.max(16, lines + lines / 3) - 1) << 1;
+    fingerprints = new long[capacity];
+    starts = new int[capacity];
+    mask = capacity - 1;
+
+    int count = 0;
+    int skipped = 0;
+    int start = 0;
+    while (start < data.length) {
+      int end = lineEnd(start);
+      if (end > start) {
+        if (insert(start, end)) {
+          count++;
+        } else {
+          skipped++;
+        }
+      }
+      start = end + 1;
+      while (start < data.length && data[start] == '\n') {
+        start++;
+      }
+    }
+    size = count;
+    duplicates = skipped;
+  }
+
+  /** Builds the index from UTF-8 text with one code per line. Takes ownership of {@code data}. */
+  public static LookupIndex build(byte[] data) {
+    return build(data, -1L);
+  }
+
+  /** Same as {@link #build(byte[])}, with fingerprints cut down to {@code fingerprintMask} so tests can make them collide. */
+  static LookupIndex build(byte[] data, long fingerprintMask) {
+    int lines = 1;
+    for (byte b : data) {
+      if (b == '\n') {
+        lines++;
+      }
+    }
+    return new LookupIndex(data, lines, fingerprintMask);
+  }
+
+  /** Reads UTF-8 text with one code per line to its end, and builds the index from it. */
+  public static LookupIndex read(InputStream stream) throws IOException {
+    return read(stream, -1);
+  }
+
+  /**
+   * Same as {@link #read(InputStream)}, for a stream of a known length, such
+   * as a file. The text is read straight into one array of that length, so
+   * loading holds a single copy of it.
+   *
+   * @param length number of bytes the stream holds, or -1 when unknown
+   */
+  public static LookupIndex read(InputStream stream, long length) throws IOException {
+    if (length > Integer.MAX_VALUE - 8) {
+      throw new IOException("Lookup set too large: " + length + " bytes");
+    }
+    byte[] data = new byte[length >= 0 ? (int) length : 64 * 1024];
+    int count = 0;
+    while (true) {
+      if (count == data.length) {
+        // Full: grow only if the stream is longer than announced.
+        int next = stream.read();
+        if (next == -1) {
+          break;
+        }
+        data = Arrays.copyOf(data, Math.min(Integer.MAX_VALUE - 8, data.length + (data.length >> 1) + 1));
+        data[count++] = (byte) next;
+      }
+      int read = stream.read(data, count, data.length - count);
+      if (read == -1) {
+        break;
+      }
+      count += read;
+    }
+    return build(count == data.length ? data : Arrays.copyOf(data, count));
+  }
+
+  /** Whether {@code code} is in the set. Thread-safe. */
+  public boolean contains(String code) {
+    byte[] bytes = code.getBytes(StandardCharsets.UTF_8);
+    long fingerprint = fingerprint(bytes, 0, bytes.length);
+    for (int slot = (int) fingerprint & mask; fingerprints[slot] != 0; slot = (slot + 1) & mask) {
+      if (fingerprints[slot] == fingerprint && equalsLine(starts[slot], bytes)) {
+        hits.incrementAndGet();
+        return true;
+      }
+    }
+    misses.incrementAndGet();
+    return false;
+  }
+
+  /** Number of distinct codes. */
+  public int size() {
+    return size;
+  }
+
+  /** Lines skipped because the same code came earlier. */
+  public int getDuplicates() {
+    return duplicates;
+  }
+
+  /** Bytes held by the text and the table. */
+  public long getFootprintBytes() {
+    return data.length + (long) fingerprints.length * (Long.BYTES + Integer.BYTES);
+  }
+
+  /** Lookups that found their code. */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /** Lookups that did not find their code. */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /** Adds the line from {@code start} to {@code end}; returns false when it is already there. */
+  private boolean insert(int start, int end) {
+    long fingerprint = fingerprint(data, start, end);
+    int slot = (int) fingerprint & mask;
+    while (fingerprints[slot] != 0) {
+      if (fingerprints[slot] == fingerprint && lineEnd(starts[slot]) - starts[slot] == end - start
+          && regionMatches(starts[slot], start, end - start)) {
+        return false;
+      }
+      slot = (slot + 1) & mask;
+    }
+    fingerprints[slot] = fingerprint;
+    starts[slot] = start;
+    return true;
+  }
+
+  /** End of the line starting at {@code start}, without a trailing carriage return. */
+  private int lineEnd(int start) {
+    int end = start;
+    while (end < data.length && data[end] != '\n') {
+      end++;
+    }
+    while (end > start && data[end - 1] == '\r') {
+      end--;
+    }
+    return end;
+  }
+
+  private boolean equalsLine(int start, byte[] code) {
+    return lineEnd(start) - start == code.length && regionMatches(start, code);
+  }
+
+  private boolean regionMatches(int start, byte[] code) {
+    for (int i = 0; i < code.length; i++) {
+      if (data[start + i] != code[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean regionMatches(int first, int second, int length) {
+    for (int i = 0; i < length; i++) {
+      if (data[first + i] != data[second + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** FNV-1a with a final avalanche, never 0, which marks an empty slot. */
+  private long fingerprint(byte[] bytes, int start, int end) {
+    long hash = FNV_OFFSET;
+    for (int i = start; i < end; i++) {
+      hash ^= bytes[i] & 0xff;
+      hash *= FNV_PRIME;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash &= fingerprintMask;
+    return hash != 0 ? hash : 1;
+  }
+}
@@ -0,0 +1,215 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cheap pre-pass that decides whether a frame is worth a full resolution
+ * detector run.
+ *
+ * <p>
+ * The Y plane is box-filtered into a pyramid at 1/2 and 1/4 of the frame size.
+ * A coarse level is cut into tiles of 32 frame pixels and the share of pixels
+ * with a strong horizontal or vertical gradient is measured per tile. Tiles
+ * dense enough to hold bars or modules are then checked again on the next
+ * finer level, and the frame is a candidate as soon as one of them is
+ * confirmed. Frames of blank cartons, floors or motion blur have too few edges
+ * and are skipped.
+ *
+ * <p>
+ * Box filtering averages out bars narrower than two pixels of a level, so the
+ * coarse level follows the smallest module the scan must find: the 1/4 level
+ * for modules of 8 frame pixels or more, the 1/2 level from 4 pixels, which is
+ * the default, and the full resolution plane, in a single pass, below that.
+ *
+ * <p>
+ * Not thread safe: use one instance per analyzer thread. The pyramid buffers
+ * are reused for as long as the frame size does not change.
+ */
+public class LumaPrefilter {
+
+  /** Tile size, in pixels of the 1/4 level, so 32 full resolution pixels. */
+  private static final int TILE = 8;
+
+  private final int edgeThreshold;
+  private final float coarseDensity;
+  private final float fineDensity;
+  /** Pyramid level of the first pass: 0 for full resolution, 1 for 1/2, 2 for 1/4. */
+  private final int coarseLevel;
+
+  private byte[] rowPair = new byte[0];
+  private final byte[][] levels = { new byte[0], new byte[0], new byte[0] };
+  private final int[] levelWidths = new int[3];
+  private final int[] levelHeights = new int[3];
+
+  private volatile long framesChecked;
+  private volatile long framesSkipped;
+
+  public LumaPrefilter() {
+    this(24, 0.08f, 0.12f, 4);
+  }
+
+  /**
+   * @param edgeThreshold minimum luma difference between neighbours that counts as an edge
+   * @param coarseDensity share of edge pixels a tile of the coarse level needs to be refined
+   * @param fineDensity   share of edge pixels the same tile needs on the next finer level
+   * @param minModulePx   narrowest bar or module, in frame pixels, that must not be filtered out
+   */
+  public LumaPrefilter(int edgeThreshold, float coarseDensity, float fineDensity, int minModulePx) {
+    this.edgeThreshold = edgeThreshold;
+    this.coarseDensity = coarseDensity;
+    this.fineDensity = fineDensity;
+    this.coarseLevel = minModulePx >= 8 ? 2 : minModulePx >= 4 ? 1 : 0;
+  }
+
+  /**
+   * Checks a region of a luma plane for barcode candidates.
+   *
+   * @param luma      the Y plane, with a pixel stride of 1
+   * @param rowStride row stride of the Y plane
+   * @param left      left edge of the region in the plane
+   * @param top       top edge of the region in the plane
+   * @param region    size of the region; the rotation is not used
+   */
+  public boolean hasCandidates(ByteBuffer luma, int rowStride, int left, int top, FrameMetadata region) {
+    framesChecked++;
+
+    buildPyramid(luma, rowStride, left, top, region.getWidth(), region.getHeight());
+    int tile = TILE << (2 - coarseLevel);
+    int width = levelWidths[coarseLevel];
+    int height = levelHeights[coarseLevel];
+    if (width < tile || height < tile) {
+      // Too small to judge, let the detector decide.
+      return true;
+    }
+
+    // The full resolution level has nothing finer to confirm with, so its one
+    // pass uses the fine density.
+    int coarseMin = (int) ((coarseLevel == 0 ? fineDensity : coarseDensity) * tile * tile);
+    int fineMin = (int) (fineDensity * 4 * tile * tile);
+    byte[] coarse = levels[coarseLevel];
+
+    for (int y = 0; y + tile <= height; y += tile) {
+      for (int x = 0; x + tile <= width; x += tile) {
+        if (countEdges(coarse, width, height, x, y, tile) < coarseMin) {
+          continue;
+        }
+        if (coarseLevel == 0) {
+          return true;
+        }
+        int fine = coarseLevel - 1;
+        if (countEdges(levels[fine], levelWidths[fine], levelHeights[fine], 2 * x, 2 * y, 2 * tile) >= fineMin) {
+          return true;
+        }
+      }
+    }
+
+    framesSkipped++;
+    return false;
+  }
+
+  /** Number of frames the pre-pass has looked at. */
+  public long getFramesChecked() {
+    return framesChecked;
+  }
+
+  /** Number of frames the pre-pass found no candidates in. */
+  public long getFramesSkipped() {
+    return framesSkipped;
+  }
+
+  /** Builds the levels down to the coarse one; the full resolution level is only copied when it is used. */
+  private void buildPyramid(ByteBuffer luma, int rowStride, int left, int top, int width, int height) {
+    boolean keepFull = coarseLevel <= 1;
+    levelWidths[0] = width;
+    levelHeights[0] = height;
+    for (int level = 1; level < 3; level++) {
+      levelWidths[level] = levelWidths[level - 1] / 2;
+      levelHeights[level] = levelHeights[level - 1] / 2;
+    }
+    for (int level = keepFull ? 0 : 1; level <= coarseLevel; level++) {
+      if (levels[level].length < levelWidths[level] * levelHeights[level]) {
+        levels[level] = new byte[levelWidths[level] * levelHeights[level]];
+      }
+    }
+    if (rowPair.length < 2 * width) {
+      rowPair = new byte[2 * width];
+    }
+
+    byte[] full = levels[0];
+    if (keepFull) {
+      for (int y = 0; y < height; y++) {
+        luma.position((top + y) * rowStride + left);
+        luma.get(full, y * width, width);
+      }
+      luma.rewind();
+    }
+    if (coarseLevel == 0) {
+      return;
+    }
+
+    // 1/2 level: average 2x2 blocks, reading two source rows at a time.
+    byte[] level1 = levels[1];
+    int level1Width = levelWidths[1];
+    for (int y = 0; y < levelHeights[1]; y++) {
+      byte[] rows;
+      int row0;
+      if (keepFull) {
+        rows = full;
+        row0 = 2 * y * width;
+      } else {
+        int rowStart = (top + 2 * y) * rowStride + left;
+        luma.position(rowStart);
+        luma.get(rowPair, 0, width);
+        luma.position(rowStart + rowStride);
+        luma.get(rowPair, width, width);
+        rows = rowPair;
+        row0 = 0;
+      }
+
+      int out = y * level1Width;
+      for (int x = 0, in = row0; x < level1Width; x++, in += 2) {
+        int sum = (rows[in] & 0xff) + (rows[in + 1] & 0xff) + (rows[width + in] & 0xff)
+            + (rows[width + in + 1] & 0xff);
+        level1[out + x] = (byte) (sum >> 2);
+      }
+    }
+    luma.rewind();
+
+    if (coarseLevel < 2) {
+      return;
+    }
+
+    // 1/4 level from the 1/2 level.
+    byte[] level2 = levels[2];
+    int level2Width = levelWidths[2];
+    for (int y = 0; y < levelHeights[2]; y++) {
+      int in0 = 2 * y * level1Width;
+      int in1 = in0 + level1Width;
+      int out = y * level2Width;
+      for (int x = 0; x < level2Width; x++, in0 += 2, in1 += 2) {
+        int sum = (level1[in0] & 0xff) + (level1[in0 + 1] & 0xff) + (level1[in1] & 0xff) + (level1[in1 + 1] & 0xff);
+        level2[out + x] = (byte) (sum >> 2);
+      }
+    }
+  }
+
+  /** Counts pixels of a square tile whose right or lower neighbour differs by more than the threshold. */
+  private int countEdges(byte[] image, int width, int height, int x0, int y0, int size) {
+    int xEnd = Math.min(x0 + size, width - 1);
+    int yEnd = Math.min(y0 + size, height - 1);
+    int edges = 0;
+
+    for (int y = y0; y < yEnd; y++) {
+      int row = y * width;
+      for (int x = x0; x < xEnd; x++) {
+        int value = image[row + x] & 0xff;
+        int dx = Math.abs(value - (image[row + x + 1] & 0xff));
+        int dy = Math.abs(value - (image[row + width + x] & 0xff));
+        if (dx > edgeThreshold || dy > edgeThreshold) {
+          edges++;
+        }
+      }
+    }
+    return edges;
+  }
+}
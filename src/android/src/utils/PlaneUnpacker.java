@@ -0,0 +1,202 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Copies one YUV plane, with arbitrary row and pixel stride, into a packed
+ * byte array.
+ *
+ * <p>
+ * The input plane data will be copied in 'out', starting at 'offset' and every
+ * pixel will be spaced by 'outPixelStride'. Note that there is no row padding on
+ * the output. Planes with a pixel stride of 1 or 2 are copied a row at a time
+ * with bulk gets; anything else falls back to a per-byte copy. Large planes can
+ * optionally be split into row stripes that run on a {@link ForkJoinPool}.
+ */
+public final class PlaneUnpacker {
+
+  /** Planes smaller than this are never split, the fork overhead would dominate. */
+  public static final int PARALLEL_MIN_PIXELS = 640 * 480;
+
+  /** Rows handled by one parallel task before it stops splitting. */
+  private static final int MIN_ROWS_PER_TASK = 64;
+
+  private static final ThreadLocal<byte[]> rowScratch = new ThreadLocal<>();
+
+  private PlaneUnpacker() {
+  }
+
+  /**
+   * Unpacks a plane on the calling thread.
+   *
+   * @param width  width of the full image; the plane size is derived from it
+   * @param height height of the full image
+   */
+  public static void unpack(ByteBuffer buffer, int rowStride, int pixelStride, int width, int height, byte[] out,
+      int offset, int outPixelStride) {
+    unpack(buffer, rowStride, pixelStride, width, height, out, offset, outPixelStride, null);
+  }
+
+  /**
+   * Unpacks a plane, splitting the rows across {@code pool} when one is given
+   * and the plane has at least {@link #PARALLEL_MIN_PIXELS} pixels.
+   */
+  public static void unpack(ByteBuffer buffer, int rowStride, int pixelStride, int width, int height, byte[] out,
+      int offset, int outPixelStride, ForkJoinPool pool) {
+    buffer.rewind();
+
+    // Compute the size of the current plane.
+    // We assume that it has the aspect ratio as the original image.
+    int numRow = (buffer.limit() + rowStride - 1) / rowStride;
+    if (numRow == 0) {
+      return;
+    }
+    int scaleFactor = height / numRow;
+    int numCol = width / scaleFactor;
+
+    copyRows(buffer, 0, rowStride, pixelStride, numCol, numRow, out, offset, outPixelStride, pool);
+    buffer.rewind();
+  }
+
+  /**
+   * Unpacks the {@code numCol} x {@code numRow} region of a plane whose top left
+   * pixel is at ({@code left}, {@code top}). Coordinates are in plane pixels, so
+   * for subsampled chroma planes they are half the image coordinates.
+   */
+  public static void unpackRegion(ByteBuffer buffer, int rowStride, int pixelStride, int left, int top, int numCol,
+      int numRow, byte[] out, int offset, int outPixelStride) {
+    if (numCol <= 0 || numRow <= 0) {
+      return;
+    }
+
+    buffer.rewind();
+    copyRows(buffer, top * rowStride + left * pixelStride, rowStride, pixelStride, numCol, numRow, out, offset,
+        outPixelStride, null);
+    buffer.rewind();
+  }
+
+  /**
+   * Converts a region of YUV 4:2:0 planes to NV21 in {@code out}: the luma
+   * rows, then V and U interleaved. The U and V planes share their strides,
+   * as YUV_420_888 guarantees. The region must have even coordinates and size,
+   * so the chroma planes line up. Plain buffers, so recorded frames go through
+   * the same conversion off the device.
+   */
+  public static void unpackNv21Region(ByteBuffer y, int yRowStride, ByteBuffer u, ByteBuffer v, int uvRowStride,
+      int uvPixelStride, int left, int top, int width, int height, byte[] out) {
+    int imageSize = width * height;
+    unpackRegion(y, yRowStride, 1, left, top, width, height, out, 0, 1);
+    // V goes first in NV21, then U.
+    unpackRegion(v, uvRowStride, uvPixelStride, left / 2, top / 2, width / 2, height / 2, out, imageSize, 2);
+    unpackRegion(u, uvRowStride, uvPixelStride, left / 2, top / 2, width / 2, height / 2, out, imageSize + 1, 2);
+  }
+
+  private static void copyRows(ByteBuffer buffer, int inputOffset, int rowStride, int pixelStride, int numCol,
+      int numRow, byte[] out, int offset, int outPixelStride, ForkJoinPool pool) {
+    if (pool != null && numRow * numCol >= PARALLEL_MIN_PIXELS && numRow >= 2 * MIN_ROWS_PER_TASK) {
+      pool.invoke(new UnpackRowsTask(buffer, inputOffset, rowStride, pixelStride, numCol, out, offset,
+          outPixelStride, 0, numRow));
+    } else {
+      unpackRows(buffer, inputOffset, rowStride, pixelStride, numCol, out, offset, outPixelStride, 0, numRow);
+    }
+  }
+
+  /** Copies rows {@code [firstRow, endRow)}; leaves the buffer position undefined. */
+  private static void unpackRows(ByteBuffer buffer, int inputOffset, int rowStride, int pixelStride, int numCol,
+      byte[] out, int offset, int outPixelStride, int firstRow, int endRow) {
+    // Bytes a row occupies in the input; the last row may not be padded to rowStride.
+    int rowLength = (numCol - 1) * pixelStride + 1;
+    int outputPos = offset + firstRow * numCol * outPixelStride;
+    int rowStart = inputOffset + firstRow * rowStride;
+
+    if (pixelStride == 1 && outPixelStride == 1) {
+      for (int row = firstRow; row < endRow; row++) {
+        buffer.position(rowStart);
+        buffer.get(out, outputPos, numCol);
+        outputPos += numCol;
+        rowStart += rowStride;
+      }
+      return;
+    }
+
+    if (pixelStride == 1 || pixelStride == 2) {
+      byte[] rowBuffer = getRowScratch(rowLength);
+      for (int row = firstRow; row < endRow; row++) {
+        buffer.position(rowStart);
+        buffer.get(rowBuffer, 0, rowLength);
+        for (int col = 0, inputPos = 0; col < numCol; col++, inputPos += pixelStride) {
+          out[outputPos] = rowBuffer[inputPos];
+          outputPos += outPixelStride;
+        }
+        rowStart += rowStride;
+      }
+      return;
+    }
+
+    for (int row = firstRow; row < endRow; row++) {
+      int inputPos = rowStart;
+      for (int col = 0; col < numCol; col++) {
+        out[outputPos] = buffer.get(inputPos);
+        outputPos += outPixelStride;
+        inputPos += pixelStride;
+      }
+      rowStart += rowStride;
+    }
+  }
+
+  private static byte[] getRowScratch(int length) {
+    byte[] scratch = rowScratch.get();
+    if (scratch == null || scratch.length < length) {
+      scratch = new byte[length];
+      rowScratch.set(scratch);
+    }
+    return scratch;
+  }
+
+  /** Splits a row range in halves until it is small enough to copy directly. */
+  private static class UnpackRowsTask extends RecursiveAction {
+    private final ByteBuffer buffer;
+    private final int inputOffset;
+    private final int rowStride;
+    private final int pixelStride;
+    private final int numCol;
+    private final byte[] out;
+    private final int offset;
+    private final int outPixelStride;
+    private final int firstRow;
+    private final int endRow;
+
+    UnpackRowsTask(ByteBuffer buffer, int inputOffset, int rowStride, int pixelStride, int numCol, byte[] out,
+        int offset, int outPixelStride, int firstRow, int endRow) {
+      this.buffer = buffer;
+      this.inputOffset = inputOffset;
+      this.rowStride = rowStride;
+      this.pixelStride = pixelStride;
+      this.numCol = numCol;
+      this.out = out;
+      this.offset = offset;
+      this.outPixelStride = outPixelStride;
+      this.firstRow = firstRow;
+      this.endRow = endRow;
+    }
+
+    @Override
+    protected void compute() {
+      if (endRow - firstRow <= MIN_ROWS_PER_TASK) {
+        // Each stripe moves its own position, so it needs its own view of the buffer.
+        unpackRows(buffer.duplicate(), inputOffset, rowStride, pixelStride, numCol, out, offset, outPixelStride,
+            firstRow, endRow);
+        return;
+      }
+
+      int middle = (firstRow + endRow) >>> 1;
+      invokeAll(
+          new UnpackRowsTask(buffer, inputOffset, rowStride, pixelStride, numCol, out, offset, outPixelStride,
+              firstRow, middle),
+          new UnpackRowsTask(buffer, inputOffset, rowStride, pixelStride, numCol, out, offset, outPixelStride,
+              middle, endRow));
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+/**
+ * The checks a decoded barcode passes before it is reported, in the order the
+ * scanner runs them: the {@link LookupIndex}, {@link CheckDigits}, K-of-N
+ * {@link ConsensusVoter} consensus and the {@link DuplicateFilter}.
+ *
+ * <p>
+ * The capture activity, the embedded scanner and {@link FrameReplay} all go
+ * through this class, so a replay on a plain JVM accepts exactly what the
+ * device would. Every check is off until set; passing null turns one off
+ * again. {@link #nextFrame(long)} must be called once per analyzed frame,
+ * including frames without barcodes, which count for the consensus. The
+ * duplicate check is separate from the others, for callers that draw every
+ * valid barcode but report each only once.
+ *
+ * <p>
+ * Not thread safe: use it from the analyzer thread only.
+ */
+public class ResultChecks {
+
+  /** Outcome of the checks for one barcode. */
+  public enum Verdict {
+    ACCEPTED,
+    NOT_IN_LOOKUP_SET,
+    BAD_CHECK_DIGIT,
+    CONSENSUS_PENDING,
+    DUPLICATE
+  }
+
+  private LookupIndex lookupIndex;
+  private boolean checkDigits;
+  private ConsensusVoter voter;
+  private DuplicateFilter duplicateFilter;
+
+  private long frameNanos;
+  private long consensusDelayNanos = -1;
+
+  /** Drops codes outside {@code lookupIndex}, as {@code lookupSet: true} does. */
+  public ResultChecks setLookupIndex(LookupIndex lookupIndex) {
+    this.lookupIndex = lookupIndex;
+    return this;
+  }
+
+  public ResultChecks setCheckDigits(boolean checkDigits) {
+    this.checkDigits = checkDigits;
+    return this;
+  }
+
+  /** K-of-N consensus, as the {@code consensus} option; votes of 1 turns it off. */
+  public ResultChecks setConsensus(int votes, int frames) {
+    this.voter = votes > 1 ? new ConsensusVoter(votes, Math.max(votes, frames)) : null;
+    return this;
+  }
+
+  /** Reports each code once per window, as continuous scanning does. */
+  public ResultChecks setDuplicateFilter(DuplicateFilter duplicateFilter) {
+    this.duplicateFilter = duplicateFilter;
+    return this;
+  }
+
+  /** Starts a new analyzed frame, taken at {@code nowNanos}, the clock all windows run on. */
+  public void nextFrame(long nowNanos) {
+    frameNanos = nowNanos;
+    if (voter != null) {
+      voter.nextFrame(nowNanos);
+    }
+  }
+
+  /** Runs every check, {@link #validate(int, String)} then {@link #isNew(int, String, byte[])}. */
+  public Verdict check(int format, String value, byte[] rawBytes) {
+    Verdict verdict = validate(format, value);
+    if (verdict == Verdict.ACCEPTED && !isNew(format, value, rawBytes)) {
+      return Verdict.DUPLICATE;
+    }
+    return verdict;
+  }
+
+  /** Runs the lookup set, check digit and consensus checks on a barcode of the current frame. */
+  public Verdict validate(int format, String value) {
+    consensusDelayNanos = -1;
+    if (lookupIndex != null && !lookupIndex.contains(value)) {
+      return Verdict.NOT_IN_LOOKUP_SET;
+    }
+    if (checkDigits && !CheckDigits.isValid(format, value)) {
+      return Verdict.BAD_CHECK_DIGIT;
+    }
+    if (voter != null) {
+      long key = ConsensusVoter.key(format, value);
+      int count = voter.vote(key);
+      if (!voter.isAccepted(count)) {
+        return Verdict.CONSENSUS_PENDING;
+      }
+      if (voter.isNewlyAccepted(count)) {
+        consensusDelayNanos = frameNanos - voter.getFirstSeenNanos(key);
+      }
+    }
+    return Verdict.ACCEPTED;
+  }
+
+  /**
+   * Whether a barcode of the current frame passes the duplicate filter, by its
+   * raw bytes when there are any. Always true without a filter.
+   */
+  public boolean isNew(int format, String value, byte[] rawBytes) {
+    if (duplicateFilter == null) {
+      return true;
+    }
+    long nowMs = frameNanos / 1000000;
+    return rawBytes != null ? duplicateFilter.shouldReport(format, rawBytes, nowMs)
+        : duplicateFilter.shouldReport(format, value, nowMs);
+  }
+
+  /**
+   * Time consensus added to the barcode last validated, from the first frame
+   * of the window that read it, when it won in this frame; -1 otherwise.
+   */
+  public long getConsensusDelayNanos() {
+    return consensusDelayNanos;
+  }
+}
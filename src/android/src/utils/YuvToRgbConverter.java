@@ -0,0 +1,156 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts NV21 and YUV_420_888 frames straight to ARGB_8888 pixels.
+ *
+ * <p>
+ * The conversion uses the integer BT.601 (video range) coefficients and writes
+ * into a caller supplied {@code int[]}, so no intermediate JPEG, stream or
+ * bitmap is created. Rotation is applied while writing: for 90 and 270 degrees
+ * the output is {@code height} pixels wide and {@code width} pixels tall.
+ */
+public final class YuvToRgbConverter {
+
+  private YuvToRgbConverter() {
+  }
+
+  /** Returns the number of ARGB pixels needed to hold a converted frame. */
+  public static int getArgbSize(int width, int height) {
+    return width * height;
+  }
+
+  /** Returns the width of the converted frame once the rotation is applied. */
+  public static int getRotatedWidth(int width, int height, int rotationDegrees) {
+    return isTransposed(rotationDegrees) ? height : width;
+  }
+
+  /** Returns the height of the converted frame once the rotation is applied. */
+  public static int getRotatedHeight(int width, int height, int rotationDegrees) {
+    return isTransposed(rotationDegrees) ? width : height;
+  }
+
+  /**
+   * Converts an NV21 array (Y plane followed by interleaved VU) to ARGB_8888,
+   * rotating clockwise by {@code rotationDegrees}.
+   */
+  public static void nv21ToArgb(byte[] nv21, int width, int height, int rotationDegrees, int[] out) {
+    checkOutput(out, width, height);
+    int frameSize = width * height;
+    int rotation = normalizeRotation(rotationDegrees);
+
+    for (int y = 0; y < height; y++) {
+      int yIndex = y * width;
+      int uvIndex = frameSize + (y >> 1) * width;
+      int outIndex = getRowStart(y, width, height, rotation);
+      int outStep = getColumnStep(width, height, rotation);
+
+      for (int x = 0; x < width; x += 2) {
+        int v = (nv21[uvIndex++] & 0xff) - 128;
+        int u = (nv21[uvIndex++] & 0xff) - 128;
+
+        out[outIndex] = toArgb(nv21[yIndex++] & 0xff, u, v);
+        outIndex += outStep;
+
+        if (x + 1 < width) {
+          out[outIndex] = toArgb(nv21[yIndex++] & 0xff, u, v);
+          outIndex += outStep;
+        }
+      }
+    }
+  }
+
+  /**
+   * Converts the three planes of a YUV_420_888 image to ARGB_8888, rotating
+   * clockwise by {@code rotationDegrees}. The U and V planes must share the same
+   * row and pixel stride, which YUV_420_888 guarantees.
+   */
+  public static void yuv420ToArgb(ByteBuffer yBuffer, int yRowStride, ByteBuffer uBuffer, ByteBuffer vBuffer,
+      int uvRowStride, int uvPixelStride, int width, int height, int rotationDegrees, int[] out) {
+    checkOutput(out, width, height);
+    int rotation = normalizeRotation(rotationDegrees);
+    int outStep = getColumnStep(width, height, rotation);
+
+    // Absolute gets keep the caller's buffer positions untouched.
+    int yBase = yBuffer.position();
+    int uBase = uBuffer.position();
+    int vBase = vBuffer.position();
+
+    for (int y = 0; y < height; y++) {
+      int yIndex = yBase + y * yRowStride;
+      int uvRow = (y >> 1) * uvRowStride;
+      int outIndex = getRowStart(y, width, height, rotation);
+
+      for (int x = 0; x < width; x++) {
+        int uvIndex = uvRow + (x >> 1) * uvPixelStride;
+        int u = (uBuffer.get(uBase + uvIndex) & 0xff) - 128;
+        int v = (vBuffer.get(vBase + uvIndex) & 0xff) - 128;
+
+        out[outIndex] = toArgb(yBuffer.get(yIndex + x) & 0xff, u, v);
+        outIndex += outStep;
+      }
+    }
+  }
+
+  /** BT.601 video range YUV to opaque ARGB, using 10 bit fixed point. */
+  private static int toArgb(int y, int u, int v) {
+    int c = 1192 * Math.max(y - 16, 0);
+    int r = clamp(c + 1634 * v);
+    int g = clamp(c - 833 * v - 400 * u);
+    int b = clamp(c + 2066 * u);
+
+    return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+  }
+
+  private static int clamp(int value) {
+    return value < 0 ? 0 : (value > 262143 ? 262143 : value);
+  }
+
+  /** Index in the output of source pixel (0, y) for the given rotation. */
+  private static int getRowStart(int y, int width, int height, int rotation) {
+    switch (rotation) {
+      case 90:
+        return height - 1 - y;
+      case 180:
+        return (height - 1 - y) * width + width - 1;
+      case 270:
+        return (width - 1) * height + y;
+      default:
+        return y * width;
+    }
+  }
+
+  /** Distance in the output between two horizontally adjacent source pixels. */
+  private static int getColumnStep(int width, int height, int rotation) {
+    switch (rotation) {
+      case 90:
+        return height;
+      case 180:
+        return -1;
+      case 270:
+        return -height;
+      default:
+        return 1;
+    }
+  }
+
+  private static boolean isTransposed(int rotationDegrees) {
+    int rotation = normalizeRotation(rotationDegrees);
+    return rotation == 90 || rotation == 270;
+  }
+
+  private static int normalizeRotation(int rotationDegrees) {
+    int rotation = ((rotationDegrees % 360) + 360) % 360;
+    if (rotation % 90 != 0) {
+      throw new IllegalArgumentException("Rotation must be a multiple of 90 degrees: " + rotationDegrees);
+    }
+    return rotation;
+  }
+
+  private static void checkOutput(int[] out, int width, int height) {
+    if (out.length < getArgbSize(width, height)) {
+      throw new IllegalArgumentException("Output holds " + out.length + " pixels, need " + width * height);
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import static com.readyop.cordova.plugins.barcode.scanner.utils.CheckDigits.FORMAT_EAN_13;
+import static com.readyop.cordova.plugins.barcode.scanner.utils.CheckDigits.FORMAT_EAN_8;
+import static com.readyop.cordova.plugins.barcode.scanner.utils.CheckDigits.FORMAT_ITF;
+import static com.readyop.cordova.plugins.barcode.scanner.utils.CheckDigits.FORMAT_UPC_A;
+import static com.readyop.cordova.plugins.barcode.scanner.utils.CheckDigits.FORMAT_UPC_E;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks {@link CheckDigits} on published GS1 examples, each with its check
+ * digit changed, and on one UPC-E code for every expansion rule.
+ */
+class CheckDigitsTest {
+
+  private static final int FORMAT_QR_CODE = 256;
+
+  @Test
+  void checksEan13() {
+    assertValid(FORMAT_EAN_13, "4006381333931");
+    assertValid(FORMAT_EAN_13, "5901234123457");
+    assertFalse(CheckDigits.isValid(FORMAT_EAN_13, "400638133393"));
+    assertFalse(CheckDigits.isValid(FORMAT_EAN_13, "40063813339310"));
+    assertFalse(CheckDigits.isValid(FORMAT_EAN_13, "40063813A3931"));
+  }
+
+  @Test
+  void checksEan8() {
+    assertValid(FORMAT_EAN_8, "96385074");
+    assertValid(FORMAT_EAN_8, "73513537");
+    assertFalse(CheckDigits.isValid(FORMAT_EAN_8, "9638507"));
+  }
+
+  @Test
+  void checksUpcA() {
+    assertValid(FORMAT_UPC_A, "036000291452");
+    assertValid(FORMAT_UPC_A, "042100005264");
+    assertFalse(CheckDigits.isValid(FORMAT_UPC_A, "4006381333931"));
+  }
+
+  @Test
+  void checksItf() {
+    assertValid(FORMAT_ITF, "00012345600012");
+    assertValid(FORMAT_ITF, "15400141288763");
+    // Other even lengths carry no mandatory check digit.
+    assertTrue(CheckDigits.isValid(FORMAT_ITF, "123456"));
+    assertTrue(CheckDigits.isValid(FORMAT_ITF, "1234567891"));
+    assertFalse(CheckDigits.isValid(FORMAT_ITF, "12345"));
+    assertFalse(CheckDigits.isValid(FORMAT_ITF, ""));
+    assertFalse(CheckDigits.isValid(FORMAT_ITF, "12A456"));
+  }
+
+  @Test
+  void expandsUpcEWithManufacturerEndingIn0To2() {
+    // 0 42 5 261 expands to 0 42 1 0000 526.
+    assertValid(FORMAT_UPC_E, "04252614");
+    assertValid(FORMAT_UPC_A, "042100005264");
+    // Number system 1.
+    assertValid(FORMAT_UPC_E, "12345601");
+    assertValid(FORMAT_UPC_A, "123000004561");
+  }
+
+  @Test
+  void expandsUpcEWithLast3() {
+    // 0 123 45 3 expands to 0 123 00000 45.
+    assertValid(FORMAT_UPC_E, "01234531");
+    assertValid(FORMAT_UPC_A, "012300000451");
+  }
+
+  @Test
+  void expandsUpcEWithLast4() {
+    // 0 1234 5 4 expands to 0 1234 00000 5.
+    assertValid(FORMAT_UPC_E, "01234543");
+    assertValid(FORMAT_UPC_A, "012340000053");
+  }
+
+  @Test
+  void expandsUpcEWithLast5To9() {
+    // 0 12345 7 expands to 0 12345 0000 7.
+    assertValid(FORMAT_UPC_E, "01234572");
+    assertValid(FORMAT_UPC_A, "012345000072");
+  }
+
+  @Test
+  void rejectsMalformedUpcE() {
+    // Only number systems 0 and 1 have a UPC-E form.
+    assertFalse(CheckDigits.isValid(FORMAT_UPC_E, "24252614"));
+    assertFalse(CheckDigits.isValid(FORMAT_UPC_E, "0425261"));
+    assertFalse(CheckDigits.isValid(FORMAT_UPC_E, "0425261X"));
+    // A bare body has no check digit to verify.
+    assertTrue(CheckDigits.isValid(FORMAT_UPC_E, "425261"));
+    assertFalse(CheckDigits.isValid(FORMAT_UPC_E, "42526A"));
+  }
+
+  @Test
+  void passesFormatsWithoutCheckDigit() {
+    assertTrue(CheckDigits.isValid(FORMAT_QR_CODE, "https://example.com"));
+    assertTrue(CheckDigits.isValid(FORMAT_QR_CODE, ""));
+    assertFalse(CheckDigits.isValid(FORMAT_QR_CODE, null));
+  }
+
+  /** Asserts that the value passes, and fails with every other check digit. */
+  private static void assertValid(int format, String value) {
+    assertTrue(CheckDigits.isValid(format, value), value);
+    String body = value.substring(0, value.length() - 1);
+    char check = value.charAt(value.length() - 1);
+    for (char digit = '0'; digit <= '9'; digit++) {
+      if (digit != check) {
+        assertFalse(CheckDigits.isValid(format, body + digit), body + digit);
+      }
+    }
+  }
+}
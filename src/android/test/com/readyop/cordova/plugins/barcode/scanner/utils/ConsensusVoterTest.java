@@ -0,0 +1,149 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks {@link ConsensusVoter} on hand-written frame sequences, and against a
+ * queue of the last N frames' reads over long random runs that wrap the ring
+ * buffer many times.
+ */
+class ConsensusVoterTest {
+
+  private static final long A = ConsensusVoter.key(32, "4006381333931");
+  private static final long B = ConsensusVoter.key(32, "5901234123457");
+
+  @Test
+  void acceptsAfterKOfNFrames() {
+    ConsensusVoter voter = new ConsensusVoter(2, 3);
+
+    voter.nextFrame(1);
+    int count = voter.vote(A);
+    assertEquals(1, count);
+    assertFalse(voter.isAccepted(count));
+
+    voter.nextFrame(2);
+    count = voter.vote(A);
+    assertEquals(2, count);
+    assertTrue(voter.isAccepted(count));
+    assertTrue(voter.isNewlyAccepted(count));
+
+    voter.nextFrame(3);
+    count = voter.vote(A);
+    assertEquals(3, count);
+    assertTrue(voter.isAccepted(count));
+    assertFalse(voter.isNewlyAccepted(count));
+  }
+
+  @Test
+  void countsEachKeyOncePerFrame() {
+    ConsensusVoter voter = new ConsensusVoter(2, 3);
+    voter.nextFrame(1);
+    assertEquals(1, voter.vote(A));
+    assertEquals(1, voter.vote(A));
+    assertEquals(1, voter.vote(B));
+  }
+
+  @Test
+  void countsEmptyFramesInTheWindow() {
+    ConsensusVoter voter = new ConsensusVoter(2, 3);
+    voter.nextFrame(1);
+    voter.vote(A);
+    voter.nextFrame(2);
+    voter.nextFrame(3);
+    assertEquals(2, voter.vote(A));
+
+    // Two empty frames push both reads but the last out of the window.
+    voter.nextFrame(4);
+    voter.nextFrame(5);
+    voter.nextFrame(6);
+    assertEquals(1, voter.vote(A));
+  }
+
+  @Test
+  void dropsOldestFrameOnWrapAround() {
+    ConsensusVoter voter = new ConsensusVoter(3, 3);
+    voter.nextFrame(1);
+    voter.vote(A);
+    voter.nextFrame(2);
+    voter.vote(A);
+    voter.nextFrame(3);
+    voter.vote(B);
+    voter.nextFrame(4);
+    // The read of frame 1 is gone; frames 2 and 4 remain.
+    assertEquals(2, voter.vote(A));
+    assertEquals(2, voter.getFirstSeenNanos(A));
+    assertEquals(3, voter.getFirstSeenNanos(B));
+  }
+
+  @Test
+  void ignoresReadsPastTheFrameLimit() {
+    ConsensusVoter voter = new ConsensusVoter(1, 2);
+    voter.nextFrame(1);
+    for (int i = 0; i < ConsensusVoter.MAX_KEYS_PER_FRAME; i++) {
+      assertEquals(1, voter.vote(i + 1));
+    }
+    assertEquals(0, voter.vote(A));
+  }
+
+  @Test
+  void forgetsEverythingOnClear() {
+    ConsensusVoter voter = new ConsensusVoter(1, 2);
+    voter.nextFrame(1);
+    voter.vote(A);
+    voter.clear();
+    assertEquals(0, voter.getFirstSeenNanos(A));
+    voter.nextFrame(2);
+    assertEquals(1, voter.vote(A));
+  }
+
+  @Test
+  void rejectsImpossibleVotes() {
+    assertThrows(IllegalArgumentException.class, () -> new ConsensusVoter(0, 3));
+    assertThrows(IllegalArgumentException.class, () -> new ConsensusVoter(4, 3));
+  }
+
+  @Test
+  void matchesWindowModel() {
+    Random random = new Random(42);
+    for (int frames = 1; frames <= 7; frames++) {
+      for (int votes = 1; votes <= frames; votes++) {
+        ConsensusVoter voter = new ConsensusVoter(votes, frames);
+        ArrayDeque<Set<Long>> window = new ArrayDeque<>();
+
+        for (int frame = 0; frame < 500; frame++) {
+          voter.nextFrame(frame + 1);
+          window.addLast(new HashSet<>());
+          if (window.size() > frames) {
+            window.removeFirst();
+          }
+
+          // Up to 4 reads of 6 keys; a quarter of the frames are empty.
+          int reads = random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(4);
+          for (int i = 0; i < reads; i++) {
+            long key = ConsensusVoter.key(256, "key" + random.nextInt(6));
+            window.getLast().add(key);
+            int expected = 0;
+            for (Set<Long> keys : window) {
+              if (keys.contains(key)) {
+                expected++;
+              }
+            }
+            int count = voter.vote(key);
+            assertEquals(expected, count, votes + " of " + frames + ", frame " + frame);
+            assertEquals(expected >= votes, voter.isAccepted(count));
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks {@link DuplicateFilter} against a model built on an access ordered
+ * {@link LinkedHashMap}, over random sequences small enough to keep the filter
+ * full, so evictions and backward shift deletions happen on most calls.
+ */
+class DuplicateFilterTest {
+
+  private static final Random RANDOM = new Random(42);
+
+  @Test
+  void suppressesWithinWindow() {
+    DuplicateFilter filter = new DuplicateFilter(1000, 4);
+    byte[] code = "4006381333931".getBytes(StandardCharsets.US_ASCII);
+
+    assertTrue(filter.shouldReport(32, code, 0));
+    assertFalse(filter.shouldReport(32, code, 999));
+    assertTrue(filter.shouldReport(32, code, 1000));
+    assertTrue(filter.shouldReport(64, code, 1000));
+    assertEquals(1, filter.getHits());
+    assertEquals(1, filter.getExpirations());
+    assertEquals(2, filter.size());
+  }
+
+  @Test
+  void forgetsEverythingOnClear() {
+    DuplicateFilter filter = new DuplicateFilter(1000, 4);
+    assertTrue(filter.shouldReport(256, "A", 0));
+    filter.clear();
+    assertEquals(0, filter.size());
+    assertTrue(filter.shouldReport(256, "A", 1));
+  }
+
+  @Test
+  void matchesModelWithTinyCapacity() {
+    for (int capacity = 1; capacity <= 5; capacity++) {
+      assertMatchesModel(capacity, 2 * capacity + 1, 50, 20000);
+    }
+  }
+
+  @Test
+  void matchesModelWithDefaultCapacity() {
+    assertMatchesModel(64, 160, 400, 200000);
+  }
+
+  @Test
+  void matchesModelWithClears() {
+    DuplicateFilter filter = new DuplicateFilter(100, 8);
+    Model model = new Model(100, 8);
+    long now = 0;
+    for (int i = 0; i < 20000; i++) {
+      now += RANDOM.nextInt(10);
+      if (RANDOM.nextInt(500) == 0) {
+        filter.clear();
+        model.clear();
+        continue;
+      }
+      int code = RANDOM.nextInt(20);
+      assertEquals(model.shouldReport(key(code), now), filter.shouldReport(256, bytes(code), now), "call " + i);
+      assertEquals(model.size(), filter.size(), "size after call " + i);
+    }
+  }
+
+  private static void assertMatchesModel(int capacity, int codes, long windowMs, int calls) {
+    DuplicateFilter filter = new DuplicateFilter(windowMs, capacity);
+    Model model = new Model(windowMs, capacity);
+    long now = 0;
+    for (int i = 0; i < calls; i++) {
+      now += RANDOM.nextInt(10);
+      int code = RANDOM.nextInt(codes);
+      boolean expected = model.shouldReport(key(code), now);
+      assertEquals(expected, filter.shouldReport(256, bytes(code), now),
+          "capacity " + capacity + ", call " + i + ", code " + code);
+      assertEquals(model.size(), filter.size());
+    }
+    assertEquals(model.hits, filter.getHits());
+    assertEquals(model.evictions, filter.getEvictions());
+    assertEquals(model.expirations, filter.getExpirations());
+  }
+
+  private static String key(int code) {
+    return Integer.toString(code);
+  }
+
+  private static byte[] bytes(int code) {
+    return ("CODE-" + code).getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /** TTL and LRU rules of the filter, kept in a map in least recently seen order. */
+  private static class Model {
+
+    private final long windowMs;
+    private final int capacity;
+    private final LinkedHashMap<String, Long> reportedAt = new LinkedHashMap<>(16, 0.75f, true);
+
+    long hits;
+    long evictions;
+    long expirations;
+
+    Model(long windowMs, int capacity) {
+      this.windowMs = windowMs;
+      this.capacity = capacity;
+    }
+
+    boolean shouldReport(String key, long now) {
+      Long last = reportedAt.get(key);
+      if (last != null) {
+        if (now - last < windowMs) {
+          hits++;
+          return false;
+        }
+        reportedAt.put(key, now);
+        expirations++;
+        return true;
+      }
+      if (reportedAt.size() == capacity) {
+        Iterator<Map.Entry<String, Long>> eldest = reportedAt.entrySet().iterator();
+        eldest.next();
+        eldest.remove();
+        evictions++;
+      }
+      reportedAt.put(key, now);
+      return true;
+    }
+
+    void clear() {
+      reportedAt.clear();
+    }
+
+    int size() {
+      return reportedAt.size();
+    }
+  }
+}
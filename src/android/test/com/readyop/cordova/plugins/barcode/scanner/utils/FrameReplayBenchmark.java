@@ -0,0 +1,45 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Replays a recording with a detector that finds nothing and prints the
+ * report, which times the conversion and prefilter stages alone. Arguments:
+ * the recording, then {@code --prefilter} to run the prefilter and
+ * {@code --repeat N} to replay it N times.
+ */
+public final class FrameReplayBenchmark {
+
+  private FrameReplayBenchmark() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.err.println("Usage: FrameReplayBenchmark <recording> [--prefilter] [--repeat N]");
+      System.exit(2);
+    }
+
+    boolean usePrefilter = false;
+    int repeat = 1;
+    for (int i = 1; i < args.length; i++) {
+      if ("--prefilter".equals(args[i])) {
+        usePrefilter = true;
+      } else if ("--repeat".equals(args[i]) && i + 1 < args.length) {
+        repeat = Math.max(1, Integer.parseInt(args[++i]));
+      }
+    }
+
+    try (FrameReader reader = new FrameReader(new File(args[0]))) {
+      FrameReplay replay = new FrameReplay((nv21, region, frame) -> Collections.emptyList());
+      if (usePrefilter) {
+        replay.setPrefilter(new LumaPrefilter());
+      }
+      for (int i = 0; i < repeat; i++) {
+        reader.rewind();
+        System.out.println(replay.run(reader));
+      }
+    }
+  }
+}
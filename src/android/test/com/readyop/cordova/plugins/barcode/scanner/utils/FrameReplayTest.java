@@ -0,0 +1,297 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Writes synthetic YUV frames with {@link FrameWriter}, reads them back with
+ * {@link FrameReader} and replays them through {@link FrameReplay} with a mock
+ * detector, including one that misreads to measure what the checks filter.
+ */
+class FrameReplayTest {
+
+  private static final int WIDTH = 64;
+  private static final int HEIGHT = 48;
+  private static final int ROW_STRIDE = 80;
+  private static final long FRAME_NANOS = 33333333L;
+  private static final int YUV_420_888 = 35;
+
+  private static final int FORMAT_QR_CODE = 256;
+  private static final String EAN = "4006381333931";
+  private static final String BAD_EAN = "4006381333932";
+
+  @TempDir
+  File dir;
+
+  @Test
+  void readsBackWhatWasWritten() throws IOException {
+    File file = new File(dir, "frames.rof");
+    Random random = new Random(7);
+    ByteBuffer[][] written = new ByteBuffer[3][];
+    try (FrameWriter writer = new FrameWriter(file)) {
+      for (int i = 0; i < written.length; i++) {
+        written[i] = createPlanes(random);
+        writer.write(metadata(i), written[i], strides(ROW_STRIDE), new int[] { 1, 2, 2 });
+      }
+      assertEquals(3, writer.getFrameCount());
+      assertEquals(file.length(), writer.getBytesWritten());
+    }
+
+    try (FrameReader reader = new FrameReader(file)) {
+      for (int i = 0; i < written.length; i++) {
+        FrameReader.Frame frame = reader.next();
+        assertNotNull(frame);
+        assertEquals(i, frame.index);
+        assertEquals(WIDTH, frame.metadata.getWidth());
+        assertEquals(HEIGHT, frame.metadata.getHeight());
+        assertEquals(90, frame.metadata.getRotation());
+        assertEquals(i * FRAME_NANOS, frame.metadata.getTimestampNanos());
+        assertEquals(YUV_420_888, frame.metadata.getFormat());
+        assertArrayEquals(strides(ROW_STRIDE), frame.rowStrides);
+        assertArrayEquals(new int[] { 1, 2, 2 }, frame.pixelStrides);
+        for (int p = 0; p < 3; p++) {
+          assertArrayEquals(bytes(written[i][p]), bytes(frame.planes[p]));
+        }
+      }
+      assertNull(reader.next());
+
+      reader.rewind();
+      FrameReader.Frame first = reader.next();
+      assertNotNull(first);
+      assertEquals(0, first.index);
+    }
+  }
+
+  @Test
+  void stopsAtTruncatedFrame() throws IOException {
+    File file = writeRecording(5);
+    try (RandomAccessFile truncate = new RandomAccessFile(file, "rw")) {
+      truncate.setLength(file.length() - 10);
+    }
+
+    try (FrameReader reader = new FrameReader(file)) {
+      int frames = 0;
+      while (reader.next() != null) {
+        frames++;
+      }
+      assertEquals(4, frames);
+      // The partial record stays unread rather than being skipped.
+      assertNull(reader.next());
+    }
+  }
+
+  @Test
+  void rejectsOtherFiles() throws IOException {
+    File file = new File(dir, "not-frames.rof");
+    try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+      out.write(new byte[64]);
+    }
+    assertThrows(IOException.class, () -> new FrameReader(file).close());
+  }
+
+  @Test
+  void countsEveryStageOfTheReplay() throws IOException {
+    File file = writeRecording(20);
+
+    FrameReplay replay = new FrameReplay((nv21, region, frame) -> {
+      assertEquals(WIDTH * HEIGHT * 3 / 2, nv21.length);
+      assertEquals(frame.metadata.getTimestampNanos(), region.getTimestampNanos());
+      switch (frame.index) {
+        case 2:
+        case 3:
+        case 4:
+          return Collections.singletonList(new FrameReplay.Detection(CheckDigits.FORMAT_EAN_13, EAN));
+        case 6:
+          return Collections.singletonList(new FrameReplay.Detection(CheckDigits.FORMAT_EAN_13, BAD_EAN));
+        case 10:
+        case 11:
+          return Collections.singletonList(new FrameReplay.Detection(FORMAT_QR_CODE, "hello"));
+        default:
+          return Collections.emptyList();
+      }
+    }).setCheckDigits(true).setConsensus(2, 3).setDuplicateFilter(new DuplicateFilter(1000, 16));
+
+    FrameReplay.Report report;
+    try (FrameReader reader = new FrameReader(file)) {
+      report = replay.run(reader);
+    }
+
+    assertEquals(20, report.frames);
+    assertEquals(0, report.framesSkipped);
+    assertEquals(6, report.detections);
+    assertEquals(1, report.checkDigitRejects);
+    // The first read of each code waits for its second vote.
+    assertEquals(2, report.consensusPending);
+    // Frame 4 reads the EAN again within the duplicate window.
+    assertEquals(1, report.duplicates);
+    assertEquals(0, report.lookupMisses);
+    // Both codes won one frame after their first read.
+    assertEquals(2, report.consensusDelay.getCount());
+    assertEquals(FRAME_NANOS / 1e6, report.consensusDelay.getMaxMs(), 0.5);
+
+    List<FrameReplay.Accepted> accepted = report.accepted;
+    assertEquals(2, accepted.size());
+    assertEquals(3, accepted.get(0).frameIndex);
+    assertEquals(EAN, accepted.get(0).value);
+    assertEquals(11, accepted.get(1).frameIndex);
+    assertEquals("hello", accepted.get(1).value);
+    assertEquals(11 * FRAME_NANOS, accepted.get(1).timestampNanos);
+    assertEquals(20, report.frame.getCount());
+  }
+
+  @Test
+  void reportsMisreadRate() throws IOException {
+    // A shelf walk: each product is in view for 15 frames, read right in 60%
+    // of them and misread, with one or two digits wrong, in 20%.
+    int products = 20;
+    int framesPerProduct = 15;
+    Random random = new Random(11);
+    String[] codes = new String[products];
+    for (int i = 0; i < products; i++) {
+      codes[i] = ean13(random);
+    }
+    List<List<FrameReplay.Detection>> reads = new ArrayList<>();
+    for (int i = 0; i < products * framesPerProduct; i++) {
+      String code = codes[i / framesPerProduct];
+      double p = random.nextDouble();
+      if (p < 0.6) {
+        reads.add(Collections.singletonList(new FrameReplay.Detection(CheckDigits.FORMAT_EAN_13, code)));
+      } else if (p < 0.8) {
+        String wrong = misread(code, random);
+        reads.add(Collections.singletonList(new FrameReplay.Detection(CheckDigits.FORMAT_EAN_13, wrong)));
+      } else {
+        reads.add(Collections.<FrameReplay.Detection>emptyList());
+      }
+    }
+    File file = writeRecording(reads.size());
+    FrameReplay.Detector detector = (nv21, region, frame) -> reads.get(frame.index);
+
+    int[] raw = replayShelf(file, new FrameReplay(detector), codes, framesPerProduct, "no checks");
+    int[] checked = replayShelf(file, new FrameReplay(detector).setCheckDigits(true), codes, framesPerProduct,
+        "check digits");
+    int[] voted = replayShelf(file, new FrameReplay(detector).setCheckDigits(true).setConsensus(2, 3), codes,
+        framesPerProduct, "check digits, 2 of 3 frames");
+
+    // Every product is still found, and each stage removes misreads.
+    assertEquals(products, raw[2]);
+    assertEquals(products, checked[2]);
+    assertEquals(products, voted[2]);
+    assertTrue(checked[1] < raw[1]);
+    assertTrue(voted[1] <= checked[1]);
+    assertEquals(0, voted[1]);
+  }
+
+  /**
+   * Replays a shelf walk with a duplicate filter and prints the misread rate.
+   * Returns the codes accepted, the wrong ones among them, and the products found.
+   */
+  private static int[] replayShelf(File file, FrameReplay replay, String[] codes, int framesPerProduct,
+      String label) throws IOException {
+    FrameReplay.Report report;
+    try (FrameReader reader = new FrameReader(file)) {
+      report = replay.setDuplicateFilter(new DuplicateFilter(1000, 64)).run(reader);
+    }
+
+    int misreads = 0;
+    Set<String> found = new HashSet<>();
+    for (FrameReplay.Accepted accepted : report.accepted) {
+      if (accepted.value.equals(codes[accepted.frameIndex / framesPerProduct])) {
+        found.add(accepted.value);
+      } else {
+        misreads++;
+      }
+    }
+    int total = report.accepted.size();
+    System.out.printf(Locale.US, "%-28s %3d accepted, %3d misread (%.1f%%), %d of %d products%n", label, total,
+        misreads, total > 0 ? 100.0 * misreads / total : 0, found.size(), codes.length);
+    return new int[] { total, misreads, found.size() };
+  }
+
+  private static String ean13(Random random) {
+    StringBuilder code = new StringBuilder();
+    for (int i = 0; i < 12; i++) {
+      code.append((char) ('0' + random.nextInt(10)));
+    }
+    for (char check = '0'; check <= '9'; check++) {
+      if (CheckDigits.isGs1(code.toString() + check)) {
+        return code.append(check).toString();
+      }
+    }
+    throw new AssertionError();
+  }
+
+  /** Replaces one digit, or in a third of the cases two, with other digits. */
+  private static String misread(String code, Random random) {
+    char[] digits = code.toCharArray();
+    int wrong = random.nextInt(3) == 0 ? 2 : 1;
+    for (int i = 0; i < wrong; i++) {
+      int at = random.nextInt(digits.length);
+      digits[at] = (char) ('0' + (digits[at] - '0' + 1 + random.nextInt(9)) % 10);
+    }
+    return new String(digits);
+  }
+
+  private File writeRecording(int frames) throws IOException {
+    File file = new File(dir, "frames-" + frames + ".rof");
+    Random random = new Random(frames);
+    try (FrameWriter writer = new FrameWriter(file)) {
+      for (int i = 0; i < frames; i++) {
+        writer.write(metadata(i), createPlanes(random), strides(ROW_STRIDE), new int[] { 1, 2, 2 });
+      }
+    }
+    return file;
+  }
+
+  private static FrameMetadata metadata(int index) {
+    return new FrameMetadata.Builder().setWidth(WIDTH).setHeight(HEIGHT).setRotation(90)
+        .setTimestampNanos(index * FRAME_NANOS).setFormat(YUV_420_888).build();
+  }
+
+  private static int[] strides(int rowStride) {
+    return new int[] { rowStride, rowStride, rowStride };
+  }
+
+  /** Luma, then U and V views into one semi-planar VU plane, as most cameras deliver them. */
+  private static ByteBuffer[] createPlanes(Random random) {
+    byte[] y = new byte[(HEIGHT - 1) * ROW_STRIDE + WIDTH];
+    random.nextBytes(y);
+    byte[] vu = new byte[(HEIGHT / 2 - 1) * ROW_STRIDE + WIDTH];
+    random.nextBytes(vu);
+    ByteBuffer chroma = ByteBuffer.wrap(vu);
+    return new ByteBuffer[] { ByteBuffer.wrap(y), slice(chroma, 1, vu.length - 1), slice(chroma, 0, vu.length - 1) };
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+    ByteBuffer view = buffer.duplicate();
+    view.position(offset);
+    view.limit(offset + length);
+    return view.slice();
+  }
+
+  private static byte[] bytes(ByteBuffer buffer) {
+    ByteBuffer view = buffer.duplicate();
+    view.position(0);
+    byte[] out = new byte[view.limit()];
+    view.get(out);
+    return out;
+  }
+}
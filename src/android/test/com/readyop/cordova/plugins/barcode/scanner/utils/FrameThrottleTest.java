@@ -0,0 +1,82 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the rates {@link FrameThrottle} lets through for a camera with
+ * jittered frame timestamps.
+ */
+class FrameThrottleTest {
+
+  private static final long MS = 1000000L;
+  private static final double CAMERA_FPS = 30;
+  private static final long JITTER_NANOS = 4 * MS;
+
+  @Test
+  void keepsFullRateWhenTargetMatchesCamera() {
+    FrameThrottle throttle = new FrameThrottle(30, 1);
+    assertEquals(300, accepted(throttle, 300, new Random(1)), 15);
+  }
+
+  @Test
+  void keepsTargetRateBelowCamera() {
+    // Within 5% of the target over 10 seconds.
+    assertEquals(200, accepted(new FrameThrottle(20, 1), 300, new Random(2)), 10);
+    assertEquals(150, accepted(new FrameThrottle(15, 1), 300, new Random(3)), 7);
+    assertEquals(100, accepted(new FrameThrottle(10, 1), 300, new Random(4)), 5);
+  }
+
+  @Test
+  void letsEveryFrameThroughWithoutLimit() {
+    FrameThrottle throttle = new FrameThrottle(0, 1);
+    assertEquals(300, accepted(throttle, 300, new Random(5)));
+    assertEquals(0, throttle.getFramesDropped());
+  }
+
+  @Test
+  void spacesFramesByDetectorLatency() {
+    // A 50 ms detector at half duty cycle allows 10 frames per second.
+    FrameThrottle throttle = new FrameThrottle(30, 0.5);
+    throttle.recordLatency(50 * MS);
+    assertEquals(100, accepted(throttle, 300, new Random(6)), 5);
+  }
+
+  @Test
+  void doesNotBurstAfterPause() {
+    FrameThrottle throttle = new FrameThrottle(10, 1);
+    assertTrue(throttle.shouldAnalyze(0));
+    assertTrue(throttle.shouldAnalyze(2000 * MS));
+    // The schedule restarts at the frame after the pause instead of letting
+    // the frames owed for the pause through at camera rate.
+    assertFalse(throttle.shouldAnalyze(2033 * MS));
+    assertTrue(throttle.shouldAnalyze(2100 * MS));
+    assertFalse(throttle.shouldAnalyze(2133 * MS));
+  }
+
+  @Test
+  void countsFrames() {
+    FrameThrottle throttle = new FrameThrottle(15, 1);
+    int accepted = accepted(throttle, 90, new Random(7));
+    assertEquals(accepted, throttle.getFramesAccepted());
+    assertEquals(90 - accepted, throttle.getFramesDropped());
+  }
+
+  /** Feeds {@code frames} camera frames, each up to the jitter early or late. */
+  private static int accepted(FrameThrottle throttle, int frames, Random random) {
+    int accepted = 0;
+    for (int i = 0; i < frames; i++) {
+      long expected = (long) (i * 1e9 / CAMERA_FPS);
+      long jitter = (long) ((random.nextDouble() * 2 - 1) * JITTER_NANOS);
+      if (throttle.shouldAnalyze(expected + jitter)) {
+        accepted++;
+      }
+    }
+    return accepted;
+  }
+}
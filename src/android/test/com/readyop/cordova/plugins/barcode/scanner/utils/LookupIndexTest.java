@@ -0,0 +1,150 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks {@link LookupIndex} on small hand-written sets, on sets whose
+ * fingerprints are cut down until most codes collide, and across the ways
+ * the text can be read.
+ */
+class LookupIndexTest {
+
+  @Test
+  void findsExactCodesOnly() {
+    LookupIndex index = index("4006381333931\n012345678905\nABC-123\n");
+    assertTrue(index.contains("4006381333931"));
+    assertTrue(index.contains("ABC-123"));
+    assertFalse(index.contains("400638133393"));
+    assertFalse(index.contains("40063813339310"));
+    assertFalse(index.contains("abc-123"));
+    assertFalse(index.contains(""));
+    assertEquals(3, index.size());
+    assertEquals(2, index.getHits());
+    assertEquals(4, index.getMisses());
+  }
+
+  @Test
+  void countsDuplicateLines() {
+    LookupIndex index = index("A\nB\nA\nC\nB\nA");
+    assertEquals(3, index.size());
+    assertEquals(3, index.getDuplicates());
+  }
+
+  @Test
+  void stripsCarriageReturns() {
+    LookupIndex index = index("A1\r\nB2\r\nA1\nC3\r\n");
+    assertTrue(index.contains("A1"));
+    assertTrue(index.contains("B2"));
+    assertTrue(index.contains("C3"));
+    assertFalse(index.contains("A1\r"));
+    assertEquals(3, index.size());
+    assertEquals(1, index.getDuplicates());
+  }
+
+  @Test
+  void skipsBlankLines() {
+    LookupIndex index = index("\n\nA\n\n\r\n\r\nB\n\n");
+    assertEquals(2, index.size());
+    assertEquals(0, index.getDuplicates());
+    assertFalse(index.contains(""));
+    assertFalse(index.contains("\r"));
+  }
+
+  @Test
+  void handlesEmptyText() {
+    LookupIndex index = index("");
+    assertEquals(0, index.size());
+    assertFalse(index.contains("A"));
+  }
+
+  @Test
+  void comparesBytesWhenFingerprintsCollide() {
+    // Four distinct fingerprints for 2,000 codes, all of the same length, so
+    // every lookup walks a long run of matching fingerprints.
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      text.append(String.format("SKU%06d\n", i));
+    }
+    for (int i = 0; i < 2000; i += 7) {
+      text.append(String.format("SKU%06d\r\n", i));
+    }
+    LookupIndex index = LookupIndex.build(text.toString().getBytes(StandardCharsets.UTF_8), 0x3);
+
+    assertEquals(2000, index.size());
+    assertEquals(286, index.getDuplicates());
+    for (int i = 0; i < 2000; i++) {
+      assertTrue(index.contains(String.format("SKU%06d", i)), "SKU" + i);
+    }
+    for (int i = 2000; i < 2500; i++) {
+      assertFalse(index.contains(String.format("SKU%06d", i)), "SKU" + i);
+    }
+    assertFalse(index.contains("SKU00000"));
+    assertFalse(index.contains("SKU0000000"));
+  }
+
+  @Test
+  void reportsFootprint() {
+    // Three lines take the minimum table of 16 slots of 12 bytes.
+    assertEquals(5 + 16 * 12, index("A\nB\nC").getFootprintBytes());
+
+    // 1,000 codes with a final newline count as 1,001 lines; 4/3 of that
+    // rounds up to a table of 2,048 slots.
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      text.append(String.format("%013d\n", i));
+    }
+    LookupIndex index = index(text.toString());
+    assertEquals(14 * 1000 + 2048 * 12, index.getFootprintBytes());
+  }
+
+  @Test
+  void readsStreamsOfAnyAnnouncedLength() throws IOException {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      text.append(i).append('\n');
+    }
+    byte[] data = text.toString().getBytes(StandardCharsets.UTF_8);
+
+    for (long length : new long[] { data.length, -1, 0, 100, data.length - 1, data.length + 1000 }) {
+      LookupIndex index = LookupIndex.read(new ChunkedStream(data, 4093), length);
+      assertEquals(20000, index.size(), "length " + length);
+      assertTrue(index.contains("0"), "length " + length);
+      assertTrue(index.contains("19999"), "length " + length);
+      assertEquals(data.length + 32768 * 12, index.getFootprintBytes(), "length " + length);
+    }
+  }
+
+  private static LookupIndex index(String text) {
+    return LookupIndex.build(text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Returns at most {@code chunk} bytes per read, as network and pipe streams do. */
+  private static class ChunkedStream extends InputStream {
+    private final ByteArrayInputStream in;
+    private final int chunk;
+
+    ChunkedStream(byte[] data, int chunk) {
+      this.in = new ByteArrayInputStream(data);
+      this.chunk = chunk;
+    }
+
+    @Override
+    public int read() {
+      return in.read();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+      return in.read(buffer, offset, Math.min(length, chunk));
+    }
+  }
+}
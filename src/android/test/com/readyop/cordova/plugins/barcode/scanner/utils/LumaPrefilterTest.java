@@ -0,0 +1,86 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks {@link LumaPrefilter} on synthetic frames: flat gray, and vertical
+ * bars of a given module width and phase in one corner of the frame.
+ */
+class LumaPrefilterTest {
+
+  private static final int WIDTH = 320;
+  private static final int HEIGHT = 240;
+  private static final int ROW_STRIDE = 336;
+
+  @Test
+  void skipsFlatFrame() {
+    ByteBuffer luma = frame(0, 0);
+    assertFalse(new LumaPrefilter().hasCandidates(luma, ROW_STRIDE, 0, 0, metadata()));
+    assertFalse(new LumaPrefilter(24, 0.08f, 0.12f, 2).hasCandidates(luma, ROW_STRIDE, 0, 0, metadata()));
+    assertFalse(new LumaPrefilter(24, 0.08f, 0.12f, 8).hasCandidates(luma, ROW_STRIDE, 0, 0, metadata()));
+  }
+
+  @Test
+  void findsCoarseBars() {
+    ByteBuffer luma = frame(8, 0);
+    assertTrue(new LumaPrefilter(24, 0.08f, 0.12f, 8).hasCandidates(luma, ROW_STRIDE, 0, 0, metadata()));
+    assertTrue(new LumaPrefilter().hasCandidates(luma, ROW_STRIDE, 0, 0, metadata()));
+  }
+
+  @Test
+  void findsFourPixelModulesTheQuarterLevelAveragesOut() {
+    // Bars of 4 pixels starting mid block are flat gray on the 1/4 level.
+    ByteBuffer luma = frame(4, 2);
+    assertFalse(new LumaPrefilter(24, 0.08f, 0.12f, 8).hasCandidates(luma, ROW_STRIDE, 0, 0, metadata()));
+    assertTrue(new LumaPrefilter().hasCandidates(luma, ROW_STRIDE, 0, 0, metadata()));
+  }
+
+  @Test
+  void findsTwoPixelModulesAtFullResolution() {
+    ByteBuffer luma = frame(2, 1);
+    assertFalse(new LumaPrefilter().hasCandidates(luma, ROW_STRIDE, 0, 0, metadata()));
+    assertTrue(new LumaPrefilter(24, 0.08f, 0.12f, 2).hasCandidates(luma, ROW_STRIDE, 0, 0, metadata()));
+  }
+
+  @Test
+  void checksOnlyTheRegion() {
+    ByteBuffer luma = frame(4, 2);
+    LumaPrefilter prefilter = new LumaPrefilter();
+    FrameMetadata region = new FrameMetadata.Builder().setWidth(128).setHeight(96).build();
+    // The bars fill the top left quarter only.
+    assertFalse(prefilter.hasCandidates(luma, ROW_STRIDE, 192, 144, region));
+    assertTrue(prefilter.hasCandidates(luma, ROW_STRIDE, 0, 0, region));
+    assertEquals(2, prefilter.getFramesChecked());
+    assertEquals(1, prefilter.getFramesSkipped());
+    assertEquals(0, luma.position());
+  }
+
+  private static FrameMetadata metadata() {
+    return new FrameMetadata.Builder().setWidth(WIDTH).setHeight(HEIGHT).build();
+  }
+
+  /**
+   * A gray frame with black and white bars of {@code module} pixels, shifted
+   * right by {@code phase}, in its top left 128x96 pixels. No bars when the
+   * module is 0.
+   */
+  private static ByteBuffer frame(int module, int phase) {
+    byte[] data = new byte[HEIGHT * ROW_STRIDE];
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < ROW_STRIDE; x++) {
+        int value = 128;
+        if (module > 0 && x < 128 && y < 96) {
+          value = ((x + module - phase) / module) % 2 == 0 ? 30 : 225;
+        }
+        data[y * ROW_STRIDE + x] = (byte) value;
+      }
+    }
+    return ByteBuffer.wrap(data);
+  }
+}
@@ -0,0 +1,158 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks {@link PlaneUnpacker} against a naive byte by byte copy, on
+ * synthetic planes with row padding and interleaved chroma.
+ */
+class PlaneUnpackerTest {
+
+  private static final Random RANDOM = new Random(42);
+
+  @Test
+  void unpacksPaddedLumaPlane() {
+    assertUnpacks(64, 48, 80, 1, 1, true);
+  }
+
+  @Test
+  void unpacksInterleavedChromaPlane() {
+    // A 64x48 frame has a 32x24 chroma plane, two bytes per pixel.
+    assertUnpacks(64, 48, 96, 2, 2, true);
+  }
+
+  @Test
+  void unpacksPlaneWithUnusualPixelStride() {
+    assertUnpacks(64, 48, 224, 3, 1, true);
+  }
+
+  @Test
+  void unpacksPlaneWithFullLastRow() {
+    assertUnpacks(64, 48, 80, 1, 1, false);
+  }
+
+  @Test
+  void parallelStripesMatchSerialCopy() {
+    int width = 1280;
+    int height = 720;
+    ByteBuffer plane = createPlane(width, height, 1344, 1, true);
+    byte[] serial = new byte[width * height];
+    byte[] parallel = new byte[width * height];
+
+    PlaneUnpacker.unpack(plane, 1344, 1, width, height, serial, 0, 1);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      PlaneUnpacker.unpack(plane, 1344, 1, width, height, parallel, 0, 1, pool);
+    } finally {
+      pool.shutdown();
+    }
+
+    assertArrayEquals(naiveUnpack(plane, 1344, 1, width, height, 1), serial);
+    assertArrayEquals(serial, parallel);
+    assertEquals(0, plane.position());
+  }
+
+  @Test
+  void unpacksRegion() {
+    int rowStride = 80;
+    ByteBuffer plane = createPlane(64, 48, rowStride, 1, true);
+    int left = 6;
+    int top = 10;
+    int width = 20;
+    int height = 38;
+    byte[] out = new byte[width * height];
+
+    PlaneUnpacker.unpackRegion(plane, rowStride, 1, left, top, width, height, out, 0, 1);
+
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        assertEquals(plane.get((top + row) * rowStride + left + col), out[row * width + col]);
+      }
+    }
+  }
+
+  @Test
+  void convertsRegionToNv21() {
+    int width = 64;
+    int height = 48;
+    int rowStride = 80;
+    ByteBuffer y = createPlane(width, height, rowStride, 1, true);
+    // Semi-planar VU, as most cameras deliver it: U starts one byte after V.
+    ByteBuffer vu = createPlane(width / 2 + 1, height / 2, rowStride, 2, true);
+    ByteBuffer v = slice(vu, 0, vu.limit() - 1);
+    ByteBuffer u = slice(vu, 1, vu.limit() - 1);
+
+    int left = 8;
+    int top = 4;
+    int cropWidth = 32;
+    int cropHeight = 40;
+    int size = cropWidth * cropHeight;
+    byte[] nv21 = new byte[size + size / 2];
+    PlaneUnpacker.unpackNv21Region(y, rowStride, u, v, rowStride, 2, left, top, cropWidth, cropHeight, nv21);
+
+    for (int row = 0; row < cropHeight; row++) {
+      for (int col = 0; col < cropWidth; col++) {
+        assertEquals(y.get((top + row) * rowStride + left + col), nv21[row * cropWidth + col]);
+      }
+    }
+    for (int row = 0; row < cropHeight / 2; row++) {
+      for (int col = 0; col < cropWidth / 2; col++) {
+        int in = (top / 2 + row) * rowStride + (left / 2 + col) * 2;
+        int out = size + row * cropWidth + 2 * col;
+        assertEquals(v.get(in), nv21[out]);
+        assertEquals(u.get(in), nv21[out + 1]);
+      }
+    }
+  }
+
+  /** Unpacks a plane of {@code width} x {@code height} pixels from a frame twice that size per subsampling. */
+  private static void assertUnpacks(int frameWidth, int frameHeight, int rowStride, int pixelStride,
+      int subsampling, boolean shortLastRow) {
+    int width = frameWidth / subsampling;
+    int height = frameHeight / subsampling;
+    ByteBuffer plane = createPlane(width, height, rowStride, pixelStride, shortLastRow);
+
+    int outPixelStride = subsampling == 1 ? 1 : 2;
+    byte[] out = new byte[width * height * outPixelStride];
+    PlaneUnpacker.unpack(plane, rowStride, pixelStride, frameWidth, frameHeight, out, 0, outPixelStride);
+
+    assertArrayEquals(naiveUnpack(plane, rowStride, pixelStride, width, height, outPixelStride), out);
+  }
+
+  /**
+   * A plane of random bytes. Camera planes usually end right after the last
+   * pixel rather than at a full row stride, which {@code shortLastRow} mimics.
+   */
+  private static ByteBuffer createPlane(int width, int height, int rowStride, int pixelStride,
+      boolean shortLastRow) {
+    int size = shortLastRow ? (height - 1) * rowStride + (width - 1) * pixelStride + 1 : height * rowStride;
+    byte[] data = new byte[size];
+    RANDOM.nextBytes(data);
+    return ByteBuffer.wrap(data);
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+    ByteBuffer view = buffer.duplicate();
+    view.position(offset);
+    view.limit(offset + length);
+    return view.slice();
+  }
+
+  private static byte[] naiveUnpack(ByteBuffer plane, int rowStride, int pixelStride, int width, int height,
+      int outPixelStride) {
+    byte[] out = new byte[width * height * outPixelStride];
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        out[(row * width + col) * outPixelStride] = plane.get(row * rowStride + col * pixelStride);
+      }
+    }
+    return out;
+  }
+}
@@ -0,0 +1,83 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import static com.readyop.cordova.plugins.barcode.scanner.utils.CheckDigits.FORMAT_EAN_13;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the order of the {@link ResultChecks} stages, the consensus delay it
+ * reports and that duplicates are told apart by raw bytes.
+ */
+class ResultChecksTest {
+
+  private static final long MS = 1000000L;
+  private static final int FORMAT_QR_CODE = 256;
+  private static final String EAN = "4006381333931";
+  private static final String BAD_EAN = "4006381333932";
+
+  @Test
+  void acceptsEverythingWithoutChecks() {
+    ResultChecks checks = new ResultChecks();
+    checks.nextFrame(0);
+    assertEquals(ResultChecks.Verdict.ACCEPTED, checks.check(FORMAT_EAN_13, BAD_EAN, null));
+    assertEquals(ResultChecks.Verdict.ACCEPTED, checks.check(FORMAT_EAN_13, BAD_EAN, null));
+    assertEquals(-1, checks.getConsensusDelayNanos());
+  }
+
+  @Test
+  void runsChecksInOrder() {
+    ResultChecks checks = new ResultChecks()
+        .setLookupIndex(LookupIndex.build((EAN + "\n" + BAD_EAN).getBytes(StandardCharsets.UTF_8)))
+        .setCheckDigits(true)
+        .setConsensus(2, 3)
+        .setDuplicateFilter(new DuplicateFilter(1000, 16));
+
+    checks.nextFrame(0);
+    assertEquals(ResultChecks.Verdict.NOT_IN_LOOKUP_SET, checks.check(FORMAT_EAN_13, "5901234123457", null));
+    // In the lookup set, but the check digit is wrong.
+    assertEquals(ResultChecks.Verdict.BAD_CHECK_DIGIT, checks.check(FORMAT_EAN_13, BAD_EAN, null));
+    assertEquals(ResultChecks.Verdict.CONSENSUS_PENDING, checks.check(FORMAT_EAN_13, EAN, null));
+    assertEquals(-1, checks.getConsensusDelayNanos());
+
+    checks.nextFrame(33 * MS);
+    assertEquals(ResultChecks.Verdict.ACCEPTED, checks.check(FORMAT_EAN_13, EAN, null));
+    assertEquals(33 * MS, checks.getConsensusDelayNanos());
+
+    checks.nextFrame(66 * MS);
+    assertEquals(ResultChecks.Verdict.DUPLICATE, checks.check(FORMAT_EAN_13, EAN, null));
+    // Consensus was reached in the frame before.
+    assertEquals(-1, checks.getConsensusDelayNanos());
+  }
+
+  @Test
+  void validatesWithoutTheDuplicateCheck() {
+    ResultChecks checks = new ResultChecks().setDuplicateFilter(new DuplicateFilter(1000, 16));
+    checks.nextFrame(0);
+    assertEquals(ResultChecks.Verdict.ACCEPTED, checks.validate(FORMAT_QR_CODE, "hello"));
+    assertTrue(checks.isNew(FORMAT_QR_CODE, "hello", null));
+    assertEquals(ResultChecks.Verdict.ACCEPTED, checks.validate(FORMAT_QR_CODE, "hello"));
+    assertFalse(checks.isNew(FORMAT_QR_CODE, "hello", null));
+  }
+
+  @Test
+  void tellsDuplicatesApartByRawBytes() {
+    ResultChecks checks = new ResultChecks().setDuplicateFilter(new DuplicateFilter(1000, 16));
+    byte[] latin1 = { 'c', 'a', 'f', (byte) 0xe9 };
+    byte[] utf8 = { 'c', 'a', 'f', (byte) 0xc3, (byte) 0xa9 };
+
+    checks.nextFrame(0);
+    // Two labels whose bytes decode to the same text are two codes.
+    assertEquals(ResultChecks.Verdict.ACCEPTED, checks.check(FORMAT_QR_CODE, "caf\u00e9", latin1));
+    assertEquals(ResultChecks.Verdict.ACCEPTED, checks.check(FORMAT_QR_CODE, "caf\u00e9", utf8));
+    assertEquals(ResultChecks.Verdict.DUPLICATE, checks.check(FORMAT_QR_CODE, "caf\u00e9", utf8.clone()));
+
+    // The window runs on the frame clock.
+    checks.nextFrame(1000 * MS);
+    assertEquals(ResultChecks.Verdict.ACCEPTED, checks.check(FORMAT_QR_CODE, "caf\u00e9", utf8));
+  }
+}
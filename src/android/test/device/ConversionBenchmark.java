@@ -0,0 +1,115 @@
+package com.readyop.cordova.plugins.barcode.scanner.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageFormat;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * On-device benchmark comparing the NV21 to JPEG to Bitmap round trip with the
+ * direct {@link YuvToRgbConverter} path used by {@link BitmapUtils}.
+ *
+ * <p>
+ * Not part of the plugin: copy it into the utils package of a debug build,
+ * call e.g. {@code ConversionBenchmark.run(50)}, and read the report from
+ * logcat under the "ConversionBenchmark" tag.
+ */
+public class ConversionBenchmark {
+  private static final String TAG = "ConversionBenchmark";
+
+  private static final int[][] RESOLUTIONS = { { 640, 480 }, { 1280, 720 }, { 1920, 1080 } };
+  private static final int WARMUP_ITERATIONS = 5;
+
+  /** Benchmarks both paths at 640x480, 1280x720 and 1920x1080 with a 90 degree rotation. */
+  public static String run(int iterations) {
+    StringBuilder report = new StringBuilder();
+
+    for (int[] resolution : RESOLUTIONS) {
+      int width = resolution[0];
+      int height = resolution[1];
+      byte[] nv21 = createTestFrame(width, height);
+      FrameMetadata metadata = new FrameMetadata.Builder().setWidth(width).setHeight(height).setRotation(90).build();
+
+      double jpegMs = timeJpegRoundTrip(nv21, metadata, iterations);
+      double directMs = timeDirect(nv21, metadata, iterations);
+
+      String line = String.format(Locale.US, "%dx%d: jpeg %.2f ms, direct %.2f ms, speedup %.1fx", width, height,
+          jpegMs, directMs, jpegMs / directMs);
+      Log.d(TAG, line);
+      report.append(line).append('\n');
+    }
+
+    return report.toString();
+  }
+
+  private static double timeJpegRoundTrip(byte[] nv21, FrameMetadata metadata, int iterations) {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      jpegRoundTrip(nv21, metadata).recycle();
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      jpegRoundTrip(nv21, metadata).recycle();
+    }
+    return (System.nanoTime() - start) / 1e6 / iterations;
+  }
+
+  private static double timeDirect(byte[] nv21, FrameMetadata metadata, int iterations) {
+    ByteBuffer data = ByteBuffer.wrap(nv21);
+    Bitmap reuse = null;
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      reuse = BitmapUtils.getBitmap(data, metadata, reuse);
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      reuse = BitmapUtils.getBitmap(data, metadata, reuse);
+    }
+    double elapsed = (System.nanoTime() - start) / 1e6 / iterations;
+
+    if (reuse != null) {
+      reuse.recycle();
+    }
+    return elapsed;
+  }
+
+  /** The conversion BitmapUtils used before the direct converter, kept as the baseline. */
+  private static Bitmap jpegRoundTrip(byte[] nv21, FrameMetadata metadata) {
+    YuvImage image = new YuvImage(nv21, ImageFormat.NV21, metadata.getWidth(), metadata.getHeight(), null);
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    image.compressToJpeg(new Rect(0, 0, metadata.getWidth(), metadata.getHeight()), 80, stream);
+
+    Bitmap bmp = BitmapFactory.decodeByteArray(stream.toByteArray(), 0, stream.size());
+    Matrix matrix = new Matrix();
+    matrix.postRotate(metadata.getRotation());
+    Bitmap rotated = Bitmap.createBitmap(bmp, 0, 0, bmp.getWidth(), bmp.getHeight(), matrix, true);
+    if (rotated != bmp) {
+      bmp.recycle();
+    }
+    return rotated;
+  }
+
+  /** A gradient with some high frequency detail, so JPEG has real work to do. */
+  private static byte[] createTestFrame(int width, int height) {
+    int frameSize = width * height;
+    byte[] nv21 = new byte[frameSize + frameSize / 2];
+
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        nv21[y * width + x] = (byte) ((x + y) ^ ((x / 4) % 2 == 0 ? 0 : 0x40));
+      }
+    }
+    for (int i = frameSize; i < nv21.length; i += 2) {
+      nv21[i] = (byte) (96 + (i % 64));
+      nv21[i + 1] = (byte) (160 - (i % 64));
+    }
+    return nv21;
+  }
+}
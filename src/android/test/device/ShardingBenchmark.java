@@ -0,0 +1,114 @@
+package com.readyop.cordova.plugins.barcode.scanner;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.barcode.BarcodeScanner;
+import com.google.mlkit.vision.common.InputImage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * On-device benchmark comparing one detector for all enabled formats with the
+ * format family shards of {@link ScannerResources#getShards(int)} running on
+ * the same frame at once.
+ *
+ * <p>
+ * Not part of the plugin: copy it into the scanner package of a debug build,
+ * call e.g. {@code ShardingBenchmark.run(context, formats, 30)} off the main
+ * thread, and read the report from logcat under the "ShardingBenchmark" tag. Sharding wins when several
+ * families are enabled and there are idle cores; the report includes the core
+ * count to read the numbers against.
+ */
+public class ShardingBenchmark {
+  private static final String TAG = "ShardingBenchmark";
+
+  private static final int[][] RESOLUTIONS = { { 640, 480 }, { 1280, 720 }, { 1920, 1080 } };
+  private static final int WARMUP_ITERATIONS = 5;
+
+  /** Benchmarks both ways of detecting {@code formats} at 640x480, 1280x720 and 1920x1080. */
+  public static String run(Context context, int formats, int iterations)
+      throws ExecutionException, InterruptedException {
+    ScannerResources resources = ScannerResources.get(context);
+    int resolved = ScannerResources.resolveFormats(formats);
+    List<BarcodeScanner> single = Collections.singletonList(resources.getScanner(resolved));
+    List<BarcodeScanner> shards = resources.getShards(resolved);
+
+    StringBuilder report = new StringBuilder();
+    String header = String.format(Locale.US, "%d cores, %d shards, %d worker threads",
+        Runtime.getRuntime().availableProcessors(), shards.size(), resources.getThreadCount());
+    Log.d(TAG, header);
+    report.append(header).append('\n');
+
+    for (int[] resolution : RESOLUTIONS) {
+      int width = resolution[0];
+      int height = resolution[1];
+      InputImage input = InputImage.fromByteArray(createTestFrame(width, height), width, height, 0,
+          InputImage.IMAGE_FORMAT_NV21);
+
+      double singleMs = time(single, input, iterations);
+      double shardedMs = time(shards, input, iterations);
+
+      String line = String.format(Locale.US, "%dx%d: single %.2f ms, sharded %.2f ms, speedup %.2fx", width, height,
+          singleMs, shardedMs, singleMs / shardedMs);
+      Log.d(TAG, line);
+      report.append(line).append('\n');
+    }
+
+    return report.toString();
+  }
+
+  private static double time(List<BarcodeScanner> scanners, InputImage input, int iterations)
+      throws ExecutionException, InterruptedException {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      detect(scanners, input);
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      detect(scanners, input);
+    }
+    return (System.nanoTime() - start) / 1e6 / iterations;
+  }
+
+  /** Runs every scanner on the frame at once and waits for all of them, like the analyzer does. */
+  private static void detect(List<BarcodeScanner> scanners, InputImage input)
+      throws ExecutionException, InterruptedException {
+    List<Task<?>> tasks = new ArrayList<>(scanners.size());
+    for (BarcodeScanner scanner : scanners) {
+      tasks.add(scanner.process(input));
+    }
+    Tasks.await(Tasks.whenAllComplete(tasks));
+  }
+
+  /**
+   * Bars of varying width on the left half and a block pattern on the right,
+   * so both the linear and the matrix detectors find candidates to work on.
+   */
+  private static byte[] createTestFrame(int width, int height) {
+    int frameSize = width * height;
+    byte[] nv21 = new byte[frameSize + frameSize / 2];
+
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        boolean dark;
+        if (x < width / 2) {
+          dark = ((x / 3) * 37) % 7 < 3;
+        } else {
+          dark = (((x / 6) * 31 + (y / 6) * 17) & 4) != 0;
+        }
+        nv21[y * width + x] = (byte) (dark ? 24 : 232);
+      }
+    }
+    for (int i = frameSize; i < nv21.length; i++) {
+      nv21[i] = (byte) 128;
+    }
+    return nv21;
+  }
+}
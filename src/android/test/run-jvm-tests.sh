@@ -0,0 +1,29 @@
+#!/bin/sh
+# Runs the JVM tests of the Android sources that are plain Java, with no
+# Android SDK or device. The utils without Android or ML Kit imports are
+# compiled together with the tests under src/android/test; the on-device
+# benchmarks under src/android/test/device are left out.
+#
+# Needs a JDK 11 or newer. The JUnit console launcher is downloaded once into
+# the output directory unless JUNIT_JAR points to a copy.
+set -e
+
+cd "$(dirname "$0")/../../.."
+
+JUNIT_VERSION=1.10.2
+OUT=${JVM_TEST_OUT:-${TMPDIR:-/tmp}/readyop-jvm-tests}
+JUNIT_JAR=${JUNIT_JAR:-$OUT/junit-platform-console-standalone-$JUNIT_VERSION.jar}
+
+mkdir -p "$OUT"
+if [ ! -f "$JUNIT_JAR" ]; then
+  curl -sfL -o "$JUNIT_JAR" \
+    "https://repo1.maven.org/maven2/org/junit/platform/junit-platform-console-standalone/$JUNIT_VERSION/junit-platform-console-standalone-$JUNIT_VERSION.jar"
+fi
+
+SOURCES=$(grep -L -E '^import (android|androidx|com\.google)\.' src/android/src/utils/*.java)
+TESTS=$(find src/android/test -name '*.java' -not -path 'src/android/test/device/*')
+
+rm -rf "$OUT/classes"
+javac --release 8 -nowarn -d "$OUT/classes" -cp "$JUNIT_JAR" $SOURCES $TESTS
+java -jar "$JUNIT_JAR" execute --class-path "$OUT/classes" --scan-class-path --disable-banner \
+  --details=tree --fail-if-no-tests
@@ -44,15 +44,33 @@ const formatCodes = {
  * Default config options
  */
 const defaults = {
+    analysisPreset: null, // [ null | 'throughput' | 'balanced' | 'battery' ] Android only
+    adaptiveFormats: null, // workflow name, Android only
     beepOnSuccess: false,
+    consensus: null, // { votes, frames } Android only
+    continuous: false, // Android only
     detectorType: null, // [ null | 'card' ]
+    duplicateCacheSize: 256, // Android only
+    duplicateWindow: 2000, // ms, Android only
     formats: formats,
+    lookupSet: false, // Android only
+    multiCode: false, // Android only
+    parseLicense: false, // Android only
+    prefilter: false, // Android only
+    rawBytes: false, // Android only
+    recordFrames: 0, // frames to record for replay, Android only
+    roi: 'full', // [ 'full' | 'reticle' | { x, y, w, h } ] Android only
     rotateCamera: false, // Android only
+    shardDetectors: false, // Android only
     showFlipCameraButton: false, // iOS only
     showTorchButton: true,
+    sortByDistance: false, // Android only, with multiCode
+    validateCheckDigits: false, // Android only
     vibrateOnSuccess: false,
 };
 
+let batchCounter = 0;
+
 /**
  * Constructor.
  *
@@ -68,6 +86,112 @@ class BarcodeScanner
         return Object.keys(formatCodes).find((k) => formatCodes[k] === code);
     }
 
+    /**
+     * Decode base64 data sent from the native side into a Uint8Array
+     */
+    decodeBase64(data)
+    {
+        const binary = atob(data);
+        const bytes = new Uint8Array(binary.length);
+        for (let i = 0; i < binary.length; i++) {
+            bytes[i] = binary.charCodeAt(i);
+        }
+        return bytes;
+    }
+
+    /**
+     * Get the format bit mask sent to the native side from a formats object
+     */
+    getFormatMask(formats)
+    {
+        let mask = 0;
+        for (const [ format, enabled ] of Object.entries(formats)) {
+            if (enabled) {
+                mask += formatCodes[format];
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Load the detector for the given formats and start the camera stack ahead
+     * of the first scan, so it opens faster. With config.shardDetectors, the
+     * format family detectors a sharded scan uses are loaded instead. Android only.
+     */
+    prepare(config, onSuccess, onError)
+    {
+        config = Object.assign({}, defaults, typeof(config) === 'object' ? config : {});
+
+        exec(
+            () => {
+                if (typeof(onSuccess) === 'function') {
+                    onSuccess();
+                }
+            },
+            (e) => {
+                if (typeof(onError) === 'function') {
+                    onError(e);
+                }
+            },
+            'cordova-plugin-barcode-scanner',
+            'prepare',
+            [ { formats: this.getFormatMask(config.formats), shardDetectors: config.shardDetectors } ]
+        );
+    }
+
+    /**
+     * Load the codes a scan with lookupSet: true accepts, replacing any loaded
+     * before. source is an ArrayBuffer or Uint8Array of UTF-8 text with one code
+     * per line, an array of strings, or the URI of such a file. onSuccess gets
+     * { count, duplicates, loadMs, bytes }. Android only.
+     */
+    loadLookupSet(source, onSuccess, onError)
+    {
+        if (Array.isArray(source)) {
+            source = new TextEncoder().encode(source.join('\n')).buffer;
+        } else if (source instanceof Uint8Array) {
+            source = source.buffer.slice(source.byteOffset, source.byteOffset + source.byteLength);
+        }
+
+        exec(
+            (r) => {
+                if (typeof(onSuccess) === 'function') {
+                    onSuccess(r);
+                }
+            },
+            (e) => {
+                if (typeof(onError) === 'function') {
+                    onError({ cancelled: false, message: e || 'Unknown error.' });
+                }
+            },
+            'cordova-plugin-barcode-scanner',
+            'loadLookupSet',
+            [ source ]
+        );
+    }
+
+    /**
+     * Drop the loaded lookup set. Android only.
+     */
+    clearLookupSet(onSuccess, onError)
+    {
+        exec(
+            () => {
+                if (typeof(onSuccess) === 'function') {
+                    onSuccess();
+                }
+            },
+            (e) => {
+                if (typeof(onError) === 'function') {
+                    onError(e);
+                }
+            },
+            'cordova-plugin-barcode-scanner',
+            'clearLookupSet',
+            []
+        );
+    }
+
     /**
      * Start the scanning process
      */
@@ -92,22 +216,47 @@ class BarcodeScanner
         // Setup the config properties
         config = Object.assign({}, defaults, config);
 
-        let formats = 0;
-        for (const [ format, enabled ] of Object.entries(config.formats)) {
-            if (enabled) {
-                formats += formatCodes[format];
-            }
-        }
-        config.formats = formats;
+        config.formats = this.getFormatMask(config.formats);
 
         exec(
-            (r) => {
-                const [text, format] = r;
+            (r, raw) => {
+                if (!Array.isArray(r)) {
+                    // Multi-code result: every barcode of the frame at once.
+                    onSuccess(r.barcodes.map((b) => {
+                        const barcode = {
+                            text: b.value,
+                            format: this.getBarcodeFormat(b.format),
+                            type: b.type,
+                            boundingBox: b.boundingBox,
+                            cornerPoints: b.cornerPoints,
+                        };
+                        if (config.rawBytes) {
+                            // Sent as base64 within the list.
+                            barcode.rawBytes = b.rawBytes ? this.decodeBase64(b.rawBytes) : null;
+                        }
+                        if (b.license) {
+                            barcode.license = b.license;
+                        }
+                        return barcode;
+                    }), r.timings || null);
+                    return;
+                }
 
-                onSuccess({
+                const [text, format, , timings, license] = r;
+                const result = {
                     text: text,
                     format: this.getBarcodeFormat(format),
-                });
+                    timings: timings || null,
+                };
+                if (license) {
+                    result.license = license;
+                }
+                if (config.rawBytes) {
+                    // Sent as a second, binary part of the result.
+                    result.rawBytes = raw instanceof ArrayBuffer ? new Uint8Array(raw) : null;
+                }
+
+                onSuccess(result);
             },
             (e) => {
                 let result = {
@@ -134,6 +283,242 @@ class BarcodeScanner
             [ config ]
         );
     }
+
+    /**
+     * Find every barcode in a still image. The image is a file or content URI,
+     * an absolute file path, a data URL or plain base64 data. Android only.
+     */
+    scanImage(image, config, onSuccess, onError)
+    {
+        config = Object.assign({}, defaults, typeof(config) === 'object' ? config : {});
+
+        exec(
+            (barcodes) => {
+                if (typeof(onSuccess) === 'function') {
+                    onSuccess(barcodes.map((b) => ({
+                        text: b.value,
+                        format: this.getBarcodeFormat(b.format),
+                        type: b.type,
+                    })));
+                }
+            },
+            (e) => {
+                if (typeof(onError) === 'function') {
+                    onError({ cancelled: false, message: e || 'Unknown error.' });
+                }
+            },
+            'cordova-plugin-barcode-scanner',
+            'scanImage',
+            [ image, { formats: this.getFormatMask(config.formats) } ]
+        );
+    }
+
+    /**
+     * Find the barcodes in many still images, several at a time. onResult is
+     * called once per image as it finishes, with { index, completed, total }
+     * and either barcodes or error, then once more with { done: true }.
+     * Returns an object whose cancel() stops starting new images. Android only.
+     */
+    scanImages(images, config, onResult, onError)
+    {
+        config = Object.assign({}, defaults, typeof(config) === 'object' ? config : {});
+        const batchId = String(++batchCounter);
+
+        const options = {
+            batchId: batchId,
+            formats: this.getFormatMask(config.formats),
+        };
+        if (config.memoryBudgetMb) {
+            options.memoryBudgetMb = config.memoryBudgetMb;
+        }
+
+        exec(
+            (r) => {
+                if (typeof(onResult) !== 'function') {
+                    return;
+                }
+                if (r.barcodes) {
+                    r.barcodes = r.barcodes.map((b) => ({
+                        text: b.value,
+                        format: this.getBarcodeFormat(b.format),
+                        type: b.type,
+                    }));
+                }
+                if (!r.done) {
+                    r.image = images[r.index];
+                }
+                onResult(r);
+            },
+            (e) => {
+                if (typeof(onError) === 'function') {
+                    onError({ cancelled: false, message: e || 'Unknown error.' });
+                }
+            },
+            'cordova-plugin-barcode-scanner',
+            'scanImages',
+            [ images, options ]
+        );
+
+        return {
+            cancel: () => exec(() => {}, () => {}, 'cordova-plugin-barcode-scanner', 'cancelScanImages', [ batchId ]),
+        };
+    }
+
+    /**
+     * Get the stage timings of the most recent scan and the analysis loop
+     * metrics. Pass { reset: true } to clear the loop metrics. Android only.
+     */
+    getMetrics(onSuccess, onError, options)
+    {
+        exec(
+            (metrics) => {
+                if (typeof(onSuccess) === 'function') {
+                    onSuccess(metrics);
+                }
+            },
+            (e) => {
+                if (typeof(onError) === 'function') {
+                    onError(e);
+                }
+            },
+            'cordova-plugin-barcode-scanner',
+            'getMetrics',
+            [ options || {} ]
+        );
+    }
+
+    /**
+     * Show the camera inside the app's own page, with no scanner screen, and
+     * scan continuously. Without config.rect the preview fills the screen
+     * behind the web view, which turns transparent, so the page draws the UI
+     * over it; with config.rect = { x, y, width, height } in CSS pixels it sits
+     * over the page in that rectangle. onResult is called for every new
+     * barcode, until show is called again or hide is called. Android only.
+     */
+    show(config, onResult, onError)
+    {
+        config = Object.assign({}, defaults, typeof(config) === 'object' ? config : {});
+        config.formats = this.getFormatMask(config.formats);
+
+        exec(
+            (r, raw) => {
+                if (typeof(onResult) !== 'function') {
+                    return;
+                }
+                const [text, format, type] = r;
+                const result = {
+                    text: text,
+                    format: this.getBarcodeFormat(format),
+                    type: type,
+                };
+                if (config.rawBytes) {
+                    result.rawBytes = raw instanceof ArrayBuffer ? new Uint8Array(raw) : null;
+                }
+                onResult(result);
+            },
+            (e) => {
+                if (typeof(onError) === 'function') {
+                    onError({
+                        cancelled: false,
+                        message: e === 'NO_CAMERA_PERMISSION' ? 'Camera permission was denied.' : e || 'Unknown error.',
+                    });
+                }
+            },
+            'cordova-plugin-barcode-scanner',
+            'show',
+            [ config ]
+        );
+    }
+
+    /**
+     * Remove the embedded preview and release the camera. The next show reopens
+     * it without reloading the detector. Android only.
+     */
+    hide(onSuccess, onError)
+    {
+        exec(
+            () => {
+                if (typeof(onSuccess) === 'function') {
+                    onSuccess();
+                }
+            },
+            (e) => {
+                if (typeof(onError) === 'function') {
+                    onError(e);
+                }
+            },
+            'cordova-plugin-barcode-scanner',
+            'hide',
+            []
+        );
+    }
+
+    /**
+     * Stop analyzing frames of the embedded preview, which keeps running.
+     * Android only.
+     */
+    pause(onSuccess, onError)
+    {
+        exec(
+            () => {
+                if (typeof(onSuccess) === 'function') {
+                    onSuccess();
+                }
+            },
+            (e) => {
+                if (typeof(onError) === 'function') {
+                    onError(e);
+                }
+            },
+            'cordova-plugin-barcode-scanner',
+            'pause',
+            []
+        );
+    }
+
+    /**
+     * Analyze frames of the embedded preview again after pause. Android only.
+     */
+    resume(onSuccess, onError)
+    {
+        exec(
+            () => {
+                if (typeof(onSuccess) === 'function') {
+                    onSuccess();
+                }
+            },
+            (e) => {
+                if (typeof(onError) === 'function') {
+                    onError(e);
+                }
+            },
+            'cordova-plugin-barcode-scanner',
+            'resume',
+            []
+        );
+    }
+
+    /**
+     * Stop a continuous scan. The scan's success callback is not called again.
+     */
+    stopScan(onSuccess, onError)
+    {
+        exec(
+            () => {
+                if (typeof(onSuccess) === 'function') {
+                    onSuccess();
+                }
+            },
+            (e) => {
+                if (typeof(onError) === 'function') {
+                    onError(e);
+                }
+            },
+            'cordova-plugin-barcode-scanner',
+            'stopScan',
+            []
+        );
+    }
 }
 
 const barcodeScanner = new BarcodeScanner();